@@ -24,33 +24,20 @@ public class Utils {
 	 * @return does not return <code>null</code>
 	 */
 	public List<String> setUnionString(List<String>a, List<String>b) {
-		List<String> result = new ArrayList<String>();
+		Set<String> result = new LinkedHashSet<String>();
 		if (a == null && b != null)
 			result.addAll(b);
 		else if (a != null && b == null)
 			result.addAll(a);
-		else {
+		else if (a != null) {
 			if (a.size() > b.size()) {
 				result.addAll(a);
-				doSetUnionStringList(b,result);
-			} else if (a.size() < b.size()) {
 				result.addAll(b);
-				doSetUnionStringList(a,result);
 			} else {
 				result.addAll(b);
-				doSetUnionStringList(a,result);
+				result.addAll(a);
 			}
 		}
-		return result;
-	}
-	
-	void doSetUnionStringList(List<String>source, List<String>target) {
-		Iterator<String>itr = source.iterator();
-		String x;
-		while (itr.hasNext()) {
-			x = itr.next();
-			if (!target.contains(x))
-				target.add(x);
-		}
+		return new ArrayList<String>(result);
 	}
 }
@@ -50,10 +50,10 @@ public class CoreBootstrap extends BootstrapBase implements IBootstrap {
 		IResult result = new ResultPojo();
 		result.setResultObject(new Boolean(true)); // optimistic default
 		//Look for the root object
-		IResult temp = database.getNode(ITopicQuestsOntology.TYPE_TYPE, credentials);
+		IResult temp = database.exists(ITopicQuestsOntology.LOCATOR_PROPERTY+":"+ITopicQuestsOntology.TYPE_TYPE, credentials);
 		if (temp.hasError())
 			result.addErrorString(temp.getErrorString());
-		if (temp.getResultObject() == null) {
+		else if (!((Boolean)temp.getResultObject()).booleanValue()) {
 			temp = doBootstrap();
 			if (temp.hasError())
 				result.addErrorString(temp.getErrorString());	
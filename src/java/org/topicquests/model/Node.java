@@ -34,6 +34,7 @@ import org.topicquests.common.api.IResult;
 import org.topicquests.common.api.ITopicQuestsOntology;
 import org.topicquests.common.api.IRelationsLegend;
 import org.topicquests.util.JSONUtil;
+import org.topicquests.util.StringSetList;
 
 /**
  * @author park
@@ -43,6 +44,19 @@ public class Node implements
 		INode, ITuple, ICitation, 
 		IValueMatrix, IConceptualGraph, IPersonEvent {
 	private JSONObject properties;
+	/** fetched with a field projection; not a property */
+	private boolean isPartial = false;
+	/** 
+	 * Properties with set semantics; these are held as {@link StringSetList}s
+	 * so that <code>add</code> and <code>contains</code> don't scan the list
+	 */
+	private static final Set<String> SET_PROPERTIES = new HashSet<String>(Arrays.asList(
+			ITopicQuestsOntology.TUPLE_LIST_PROPERTY,
+			ITopicQuestsOntology.TUPLE_LIST_PROPERTY_RESTRICTED,
+			ITopicQuestsOntology.RESTRICTION_PROPERTY_TYPE,
+			ITopicQuestsOntology.SCOPE_LIST_PROPERTY_TYPE,
+			ITopicQuestsOntology.MERGE_LIST_PROPERTY,
+			ITopicQuestsOntology.MERGE_TUPLE_PROPERTY));
 	
 	/**
 	 * 
@@ -136,7 +150,10 @@ public class Node implements
 	}
 
 	private void addMultivaluedSetStringProperty(String key, String value) {
-		
+		if (SET_PROPERTIES.contains(key)) {
+			getSetProperty(key).add(value);
+			return;
+		}
 		Object o = properties.get(key);
 		List<String> ll;
 		if (o == null) {
@@ -297,6 +314,8 @@ public class Node implements
 	 * @return does not return <code>null</code>
 	 */
 	List<String> getMultivaluedProperty(String key) {
+		if (SET_PROPERTIES.contains(key))
+			return getSetProperty(key);
 		List<String> result = null;
 		Object op = properties.get(key);
 		if (op != null) {
@@ -313,10 +332,30 @@ public class Node implements
 		return result;
 	}
 	
+	/**
+	 * A property from {@link #SET_PROPERTIES}; any String or List value found,
+	 * e.g. from a Solr hit, is converted and installed
+	 * @param key
+	 * @return does not return <code>null</code>
+	 */
+	StringSetList getSetProperty(String key) {
+		Object op = properties.get(key);
+		if (op instanceof StringSetList)
+			return (StringSetList)op;
+		StringSetList result;
+		if (op instanceof String) {
+			result = new StringSetList();
+			result.add((String)op);
+		} else if (op instanceof Collection)
+			result = new StringSetList((Collection<String>)op);
+		else
+			result = new StringSetList();
+		properties.put(key, result);
+		return result;
+	}
+	
 	public void addRestrictionCredential(String userId) {
-		List<String> l = getMultivaluedProperty(ITopicQuestsOntology.RESTRICTION_PROPERTY_TYPE);
-		if (!l.contains(userId))
-			l.add(userId);
+		getSetProperty(ITopicQuestsOntology.RESTRICTION_PROPERTY_TYPE).add(userId);
 	}
 
 	public void removeRestrictionCredential(String userId) {
@@ -467,7 +506,21 @@ public class Node implements
 
 	@Override
 	public String getVersion() {
-		return (String)properties.get(ITopicQuestsOntology.SOLR_VERSION_PROPERTY_TYPE);
+		//Solr returns _version_ as a Long
+		Object o = properties.get(ITopicQuestsOntology.SOLR_VERSION_PROPERTY_TYPE);
+		if (o == null)
+			return null;
+		return o.toString();
+	}
+
+	@Override
+	public void setIsPartial(boolean isPartial) {
+		this.isPartial = isPartial;
+	}
+
+	@Override
+	public boolean isPartial() {
+		return isPartial;
 	}
 
 	@Override
@@ -537,6 +590,10 @@ public class Node implements
 
 	@Override
 	public void addPropertyValue(String key, String value) {
+		if (SET_PROPERTIES.contains(key)) {
+			getSetProperty(key).add(value);
+			return;
+		}
 		Object vx = getProperty(key);
 		if (vx == null)
 			setProperty(key,value);
@@ -591,7 +648,7 @@ public class Node implements
 
 	@Override
 	public void addScope(String scopeLocator) {
-		this.addPropertyValue(ITopicQuestsOntology.SCOPE_LIST_PROPERTY_TYPE, scopeLocator);
+		getSetProperty(ITopicQuestsOntology.SCOPE_LIST_PROPERTY_TYPE).add(scopeLocator);
 	}
 
 	@Override
@@ -848,31 +905,16 @@ public class Node implements
 
 	@Override
 	public void addMergeTupleLocator(String locator) {
-		Object o = properties.get(ITopicQuestsOntology.MERGE_TUPLE_PROPERTY);
-		if (o == null)
-			properties.put(ITopicQuestsOntology.MERGE_TUPLE_PROPERTY, locator);
-		else if (o instanceof String) {
-			if (!o.equals(locator)) {
-				List<String> x = new ArrayList<String>();
-				x.add((String)o);
-				x.add(locator);
-				properties.put(ITopicQuestsOntology.MERGE_TUPLE_PROPERTY, x);
-			}
-		} else {
-			List<String>x = (List<String>)o;
-			if (!x.contains(locator)) {
-				x.add(locator);
-				properties.put(ITopicQuestsOntology.MERGE_TUPLE_PROPERTY, x);
-			}
-		}
+		getSetProperty(ITopicQuestsOntology.MERGE_TUPLE_PROPERTY).add(locator);
 	}
 
 	@Override
 	public String getMergeTupleLocator() {
 		Object o = properties.get(ITopicQuestsOntology.MERGE_TUPLE_PROPERTY);
-		if (o instanceof List) 
-			return ((List<String>)o).get(0);
-		else
+		if (o instanceof List) {
+			List<String> l = (List<String>)o;
+			return l.isEmpty() ? null : l.get(0);
+		} else
 			return (String)o;
 	}
 
@@ -39,6 +39,12 @@ public interface IDataProvider {
 	   * @return
 	   */
   	  ITupleQuery getTupleQuery();
+  	  
+	  /**
+	   * Return the {@link IGraphQuery} installed in this system
+	   * @return
+	   */
+  	  IGraphQuery getGraphQuery();
 	
 	  /**
 	   * Remove an {@link INode} from the internal cache
@@ -74,11 +80,10 @@ public interface IDataProvider {
 	  void setMergeBean(IMergeImplementation merger);
 	  
 	  /**
-	   * Export the entire database to <code>out</code>
+	   * Export the entire database to <code>out</code>, streamed a page at a time
 	   * @param out
 	   * @param credentials
 	   * @return
-	   * @deprecated   WILL NOT SCALE -- not implemented
 	   */
 	  IResult exportXmlFile(Writer out, Set<String> credentials);
 	  
@@ -173,6 +178,45 @@ public interface IDataProvider {
 	   * @return
 	   */
 	  IResult existsTupleBySubjectOrObjectAndRelation(String theLocator, String relationLocator);
+	  
+	  /**
+	   * Returns a Boolean <code>true</code> if there exists an {@link ITuple} with
+	   * <code>signature</code> which is visible to <code>credentials</code>
+	   * @param signature
+	   * @param credentials
+	   * @return
+	   */
+	  IResult existsTupleBySignature(String signature, Set<String> credentials);
+	  
+	  /**
+	   * Returns a Long: the number of nodes which answer <code>queryString</code> and
+	   * are visible to <code>credentials</code>, without fetching them
+	   * @param queryString
+	   * @param credentials
+	   * @return
+	   */
+	  IResult count(String queryString, Set<String> credentials);
+	  
+	  /**
+	   * Returns a Boolean <code>true</code> if any node visible to
+	   * <code>credentials</code> answers <code>queryString</code>
+	   * @param queryString
+	   * @param credentials
+	   * @return
+	   */
+	  IResult exists(String queryString, Set<String> credentials);
+	  
+	  /**
+	   * Returns a <code>Map<String,Long></code>: for each value of <code>field</code>
+	   * among the nodes which answer <code>queryString</code> and are visible to
+	   * <code>credentials</code>, how many have it; most frequent first
+	   * @param queryString
+	   * @param field
+	   * @param limit <code>-1</code> means all values
+	   * @param credentials
+	   * @return
+	   */
+	  IResult facetCounts(String queryString, String field, int limit, Set<String> credentials);
 
 	  /**
 	   * <p>Tests whether <code>nodeLocator</code> is of type or a subclass of 
@@ -196,6 +240,12 @@ public interface IDataProvider {
 	   */
 	  IResult listNodesByPSI(String psi, int start, int count, Set<String> credentials);
 	  
+	  /**
+	   * As <code>listNodesByPSI</code>, returning only the fields in <code>projection</code>
+	   * @param projection see {@link org.topicquests.solr.FieldProjection}
+	   */
+	  IResult listNodesByPSI(String psi, int start, int count, String projection, Set<String> credentials);
+	  
 	  /**
 	   * <p>List nodes by the combination of a <code>label</code> and <code>typeLocator</code></p>
 	   * <p>TODO: requires language parameter</p>
@@ -208,12 +258,24 @@ public interface IDataProvider {
 	   */
 	  IResult listNodesByLabelAndType(String label, String typeLocator,int start, int count, Set<String> credentials);
 	  
+	  /**
+	   * As <code>listNodesByLabelAndType</code>, returning only the fields in <code>projection</code>
+	   * @param projection see {@link org.topicquests.solr.FieldProjection}
+	   */
+	  IResult listNodesByLabelAndType(String label, String typeLocator,int start, int count, String projection, Set<String> credentials);
+	  
 	  /**
 	   * <p>List nodes by <code>label</code></p>
 	   * <p>TODO: requires language parameter</p>
 	   */
 	  IResult listNodesByLabel(String label,int start, int count, Set<String> credentials);
 	  
+	  /**
+	   * As <code>listNodesByLabel</code>, returning only the fields in <code>projection</code>
+	   * @param projection see {@link org.topicquests.solr.FieldProjection}
+	   */
+	  IResult listNodesByLabel(String label,int start, int count, String projection, Set<String> credentials);
+	  
 	  /**
 	   * <p>Return nodes with labels that are <em>like</em> <code>labelFragment</code></p>
 	   * <p>A <em>wildcard</em> is added before and after <code>labelFragment</code></p>
@@ -228,6 +290,12 @@ public interface IDataProvider {
 	   */
 	  IResult listNodesByLabelLike(String labelFragment, int start, int count, Set<String> credentials);
 	  
+	  /**
+	   * As <code>listNodesByLabelLike</code>, returning only the fields in <code>projection</code>
+	   * @param projection see {@link org.topicquests.solr.FieldProjection}
+	   */
+	  IResult listNodesByLabelLike(String labelFragment, int start, int count, String projection, Set<String> credentials);
+	  
 	  /**
 	   * <p>Return nodes with details that are <em>like</em> <code>detailsFragment</code></p>
 	   * <p>Note: requires language parameter</p>
@@ -239,6 +307,12 @@ public interface IDataProvider {
 	   */
 	  IResult listNodesByDetailsLike(String detailsFragment, int start, int count, Set<String> credentials);
 	  
+	  /**
+	   * As <code>listNodesByDetailsLike</code>, returning only the fields in <code>projection</code>
+	   * @param projection see {@link org.topicquests.solr.FieldProjection}
+	   */
+	  IResult listNodesByDetailsLike(String detailsFragment, int start, int count, String projection, Set<String> credentials);
+	  
 	  /**
 	   * Answer a particular Solr query string
 	   * @param queryString
@@ -249,6 +323,12 @@ public interface IDataProvider {
 	   */
 	  IResult listNodesByQuery(String queryString,int start, int count, Set<String> credentials);
 	  
+	  /**
+	   * As <code>listNodesByQuery</code>, returning only the fields in <code>projection</code>
+	   * @param projection see {@link org.topicquests.solr.FieldProjection}
+	   */
+	  IResult listNodesByQuery(String queryString,int start, int count, String projection, Set<String> credentials);
+	  
 	  /**
 	   * Return nodes created by <code>creatorId</code>
 	   * @param creatorId
@@ -259,6 +339,12 @@ public interface IDataProvider {
 	   */
 	  IResult listNodesByCreatorId(String creatorId, int start, int count, Set<String> credentials);
 	  
+	  /**
+	   * As <code>listNodesByCreatorId</code>, returning only the fields in <code>projection</code>
+	   * @param projection see {@link org.topicquests.solr.FieldProjection}
+	   */
+	  IResult listNodesByCreatorId(String creatorId, int start, int count, String projection, Set<String> credentials);
+	  
 	  /**
 	   * Return nodes of type <code>typeLocator</code>
 	   * @param typeLocator
@@ -269,6 +355,12 @@ public interface IDataProvider {
 	   */
 	  IResult listNodesByType(String typeLocator,int start, int count, Set<String> credentials);
 	  
+	  /**
+	   * As <code>listNodesByType</code>, returning only the fields in <code>projection</code>
+	   * @param projection see {@link org.topicquests.solr.FieldProjection}
+	   */
+	  IResult listNodesByType(String typeLocator,int start, int count, String projection, Set<String> credentials);
+	  
 	  /**
 	   * List all {@link ITuple} objects with <code>signature</code>
 	   * @param signature
@@ -289,6 +381,12 @@ public interface IDataProvider {
 	   */
 	  IResult listInstanceNodes(String typeLocator, int start, int count, Set<String> credentials);
 	  
+	  /**
+	   * As <code>listInstanceNodes</code>, returning only the fields in <code>projection</code>
+	   * @param projection see {@link org.topicquests.solr.FieldProjection}
+	   */
+	  IResult listInstanceNodes(String typeLocator, int start, int count, String projection, Set<String> credentials);
+	  
 	  /**
 	   * <p>List nodes by type, except if any nodes are merged, do not list them. All virtual nodes
 	   * will be listed</p>
@@ -309,6 +407,12 @@ public interface IDataProvider {
 	   * @return
 	   */
 	  IResult listSubclassNodes(String superclassLocator, int start, int count, Set<String> credentials);
+	  
+	  /**
+	   * As <code>listSubclassNodes</code>, returning only the fields in <code>projection</code>
+	   * @param projection see {@link org.topicquests.solr.FieldProjection}
+	   */
+	  IResult listSubclassNodes(String superclassLocator, int start, int count, String projection, Set<String> credentials);
 
 	  ////////////////////////////////////
 	  //Tuple support
@@ -352,4 +456,16 @@ public interface IDataProvider {
 	   * @return
 	   */
 	  IResult runQuery(String queryString, int start, int count, Set<String> credentials);
+	  
+	  /**
+	   * As <code>runQuery</code>, returning only the fields in <code>projection</code>;
+	   * the nodes returned are partial unless <code>projection</code> is <code>full</code>
+	   * @param queryString
+	   * @param start
+	   * @param count
+	   * @param projection see {@link org.topicquests.solr.FieldProjection}
+	   * @param credentials
+	   * @return
+	   */
+	  IResult runQuery(String queryString, int start, int count, String projection, Set<String> credentials);
 }
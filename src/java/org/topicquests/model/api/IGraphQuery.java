@@ -15,10 +15,57 @@
  */
 package org.topicquests.model.api;
 
+import java.util.Set;
+
+import org.topicquests.common.api.IResult;
+
 /**
  * @author park
  * <p>To support a ConceptualGraph DSL</p>
+ * <p>Traversal follows tuples whose object is a node; each level of a
+ * traversal is expanded with batched queries, not one query per node</p>
  */
 public interface IGraphQuery {
- //TODO
+	/** follow tuples from subject to object */
+	public static final int OUTGOING = 0;
+	/** follow tuples from object to subject */
+	public static final int INCOMING = 1;
+	public static final int BOTH = 2;
+	
+	public static final int BREADTH_FIRST = 0;
+	public static final int DEPTH_FIRST = 1;
+
+	/**
+	 * <p>Visit the nodes within <code>maxDepth</code> hops of <code>rootLocator</code>,
+	 * each once, including the root at depth 0</p>
+	 * <p>With <code>DEPTH_FIRST</code>, the neighborhood is still fetched a level at
+	 * a time; only the order of visits differs</p>
+	 * @param rootLocator
+	 * @param maxDepth
+	 * @param direction <code>OUTGOING</code>, <code>INCOMING</code> or <code>BOTH</code>
+	 * @param order <code>BREADTH_FIRST</code> or <code>DEPTH_FIRST</code>
+	 * @param relationTypes if not <code>null</code>, only follow tuples of these types
+	 * @param scopeLocator if not <code>null</code>, only follow tuples in this scope
+	 * @param limit maximum number of nodes; <code>-1</code> means no limit
+	 * @param visitor can be <code>null</code>; can stop the traversal
+	 * @param credentials
+	 * @return <code>List<INode></code> in the order visited
+	 */
+	IResult traverse(String rootLocator, int maxDepth, int direction, int order,
+			Set<String> relationTypes, String scopeLocator, int limit,
+			IGraphVisitor visitor, Set<String> credentials);
+	
+	/**
+	 * A shortest path, breadth first
+	 * @param fromLocator
+	 * @param toLocator
+	 * @param maxDepth
+	 * @param direction
+	 * @param relationTypes can be <code>null</code>
+	 * @param credentials
+	 * @return <code>List<INode></code> from <code>fromLocator</code> to <code>toLocator</code>,
+	 *  or an empty list if there is none within <code>maxDepth</code> hops
+	 */
+	IResult findPath(String fromLocator, String toLocator, int maxDepth, int direction,
+			Set<String> relationTypes, Set<String> credentials);
 }
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.model.api;
+
+/**
+ * @author park
+ * <p>Called by {@link IGraphQuery#traverse} for each node reached</p>
+ */
+public interface IGraphVisitor {
+
+	/**
+	 * @param node
+	 * @param via the tuple followed to reach <code>node</code>, partial: it carries
+	 *  only its endpoints and relation; <code>null</code> for the root
+	 * @param depth
+	 * @return <code>false</code> to end the traversal
+	 */
+	boolean visit(INode node, ITuple via, int depth);
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.model.api;
+
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.topicquests.common.api.IResult;
+
+/**
+ * <p>A queue in front of {@link IMergeImplementation#assertMerge}.</p>
+ * <p>A (source, target) pair is the same merge as (target, source); a pair
+ * which is already queued or running, or which finished recently, is not
+ * merged again. Merges which share a node are run one after another;
+ * unrelated merges run in parallel</p>
+ * @author park
+ *
+ */
+public interface IMergeQueue {
+
+	/**
+	 * Queue a merge; arguments as for {@link IMergeImplementation#assertMerge}
+	 * @param sourceNodeLocator
+	 * @param targetNodeLocator
+	 * @param mergeData
+	 * @param mergeConfidence
+	 * @param userLocator
+	 * @return the result of <code>assertMerge</code>; for a duplicate, the result of the
+	 * merge it duplicates
+	 */
+	Future<IResult> submitMerge(String sourceNodeLocator, String targetNodeLocator, 
+			Map<String, Double> mergeData, double mergeConfidence, String userLocator);
+	
+	/**
+	 * @return number of merges queued or running
+	 */
+	int getPendingCount();
+	
+	void shutDown();
+}
@@ -110,6 +110,15 @@ public interface INode {
 	 */
 	String getVersion();
 	
+	/**
+	 * A partial node was fetched with only some of its fields; it must
+	 * not be cached, or used to update the stored node
+	 * @param isPartial
+	 */
+	void setIsPartial(boolean isPartial);
+	
+	boolean isPartial();
+	
 	/**
 	 *  YYYY-MM-DDThh:mm:ssZ; this is the createdDate
 	 * @param date
@@ -86,6 +86,20 @@ public interface ITupleQuery {
 	 */
 	IResult listObjectNodesBySubjectAndRelation(String subjectLocator, String relationLocator, Set<String>credentials);
 	
+	/**
+	 * <p>Return a possibly empty list of {@link INode} objects at the other end
+	 * of the tuples which have <code>locator</code> as subject, object or either</p>
+	 * @param locator
+	 * @param relationLocator can be <code>null</code> for any relation
+	 * @param direction {@link IGraphQuery#OUTGOING}: objects of tuples from <code>locator</code>;
+	 *  {@link IGraphQuery#INCOMING}: subjects of tuples to it; {@link IGraphQuery#BOTH}
+	 * @param start
+	 * @param count
+	 * @param credentials apply to the tuples as well as the nodes
+	 * @return <code>List<INode></code>
+	 */
+	IResult listNeighbors(String locator, String relationLocator, int direction, int start, int count, Set<String>credentials);
+	
 	
 	/**
 	 * <p>Return a possibly empty list of {@link INode} objects which correspond with
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.topicquests.solr.api.IPartialUpdateMutator;
+
+/**
+ * Add a value to a multi-valued property unless it is already there
+ * @author park
+ *
+ */
+public class AddPropertyValueMutator implements IPartialUpdateMutator {
+	private String key;
+	private Object value;
+
+	public AddPropertyValueMutator(String key, Object value) {
+		this.key = key;
+		this.value = value;
+	}
+
+	@Override
+	public Map<String, Object> mutate(Map<String, Object> current) {
+		Object o = (current == null) ? null : current.get(key);
+		String what = "set";
+		if (o instanceof List) {
+			if (((List<?>)o).contains(value))
+				return null;
+			what = "add";
+		} else if (o != null) {
+			if (o.equals(value))
+				return null;
+			what = "add";
+		}
+		Map<String,Object> result = new HashMap<String,Object>();
+		Map<String,Object> op = new HashMap<String,Object>();
+		op.put(what, value);
+		result.put(key, op);
+		return result;
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.topicquests.common.ResultPojo;
+import org.topicquests.common.api.IResult;
+import org.topicquests.solr.api.IAsyncSolrClient;
+import org.topicquests.solr.api.ISolrClient;
+import org.topicquests.util.LoggingPlatform;
+
+/**
+ * <p>{@link IAsyncSolrClient} over any {@link ISolrClient}: each call is a task
+ * on a fixed pool of <code>threads</code> daemon threads, so callers which fan
+ * out many lookups hold futures rather than threads</p>
+ * <p>A task which throws yields an {@link IResult} with the error string, as
+ * the blocking calls do, rather than an <code>ExecutionException</code></p>
+ * @author park
+ *
+ */
+public class AsyncSolrClient implements IAsyncSolrClient {
+	private LoggingPlatform log = LoggingPlatform.getInstance();
+	private ISolrClient client;
+	private ExecutorService executor;
+
+	/**
+	 * @param c
+	 * @param threads
+	 */
+	public AsyncSolrClient(ISolrClient c, int threads) {
+		client = c;
+		final AtomicInteger count = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "AsyncSolrClient-"+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	@Override
+	public Future<IResult> runQueryAsync(final String queryString, final int start,
+			final int count, final String[] fields) {
+		return submit(new Callable<IResult>() {
+			@Override
+			public IResult call() {
+				return client.runQuery(queryString, start, count, fields);
+			}
+		});
+	}
+
+	@Override
+	public Future<IResult> countAsync(final String queryString, final String filterQuery) {
+		return submit(new Callable<IResult>() {
+			@Override
+			public IResult call() {
+				return client.count(queryString, filterQuery);
+			}
+		});
+	}
+
+	@Override
+	public Future<IResult> realTimeGetAsync(final String locator) {
+		return submit(new Callable<IResult>() {
+			@Override
+			public IResult call() {
+				return client.realTimeGet(locator);
+			}
+		});
+	}
+
+	@Override
+	public Future<IResult> addDataAsync(final Map<String, Object> fields) {
+		return submit(new Callable<IResult>() {
+			@Override
+			public IResult call() {
+				return client.addData(fields);
+			}
+		});
+	}
+
+	@Override
+	public Future<IResult> addDataAsync(final Collection<Map<String, Object>> documents) {
+		return submit(new Callable<IResult>() {
+			@Override
+			public IResult call() {
+				return client.addData(documents);
+			}
+		});
+	}
+
+	@Override
+	public Future<IResult> partialUpdateDataAsync(final Map<String, Object> fields) {
+		return submit(new Callable<IResult>() {
+			@Override
+			public IResult call() {
+				return client.partialUpdateData(fields);
+			}
+		});
+	}
+
+	@Override
+	public Future<IResult> deleteByLocatorAsync(final String locator) {
+		return submit(new Callable<IResult>() {
+			@Override
+			public IResult call() {
+				return client.deleteByLocator(locator);
+			}
+		});
+	}
+
+	@Override
+	public Future<IResult> submit(final Callable<IResult> task) {
+		return executor.submit(new Callable<IResult>() {
+			@Override
+			public IResult call() {
+				try {
+					return task.call();
+				} catch (Exception e) {
+					log.logError("AsyncSolrClient "+e.getMessage(), e);
+					IResult r = new ResultPojo();
+					r.addErrorString(e.getMessage());
+					return r;
+				}
+			}
+		});
+	}
+
+	@Override
+	public void shutDown() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr;
+
+import java.util.*;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.topicquests.common.ResultPojo;
+import org.topicquests.common.api.IResult;
+import org.topicquests.util.LoggingPlatform;
+
+/**
+ * <p>The one place an {@link org.topicquests.solr.api.ISolrClient} decides when to commit.
+ * Its update paths send <code>commitWithin</code> = {@link #getCommitWithin()}
+ * and report each update with {@link #updated(int)}; they never commit themselves</p>
+ * <p>Policy, from the configuration:
+ * <ul><li><code>SoftCommitWithin</code>: milliseconds within which Solr makes
+ *  an update searchable; 0 means a soft commit after every update</li>
+ * <li><code>HardCommitInterval</code>: milliseconds after the first uncommitted
+ *  update that a hard commit makes it durable; 0 means never by time</li>
+ * <li><code>HardCommitDocs</code>: uncommitted updates which bring a hard commit
+ *  forward; 0 means never by count</li></ul>
+ * Callers which need durability now, rather than within the interval,
+ * call {@link #flush()}</p>
+ * @author park
+ *
+ */
+public class CommitManager {
+	private LoggingPlatform log = LoggingPlatform.getInstance();
+	private SolrServer server;
+	private int softCommitWithin = 1000;
+	private long hardCommitInterval = 60000;
+	private int hardCommitDocs = 1000;
+	/** updates since the last hard commit; guarded by <code>this</code> */
+	private int pending = 0;
+	/** when the first of them arrived */
+	private long firstPending = 0;
+	private Timer timer;
+
+	/**
+	 * @param s
+	 * @param properties the configuration; can be <code>null</code>
+	 */
+	public CommitManager(SolrServer s, Map<String,Object> properties) {
+		server = s;
+		if (properties != null) {
+			String x = (String)properties.get("SoftCommitWithin");
+			if (x != null)
+				softCommitWithin = Integer.parseInt(x);
+			x = (String)properties.get("HardCommitInterval");
+			if (x != null)
+				hardCommitInterval = Long.parseLong(x);
+			x = (String)properties.get("HardCommitDocs");
+			if (x != null)
+				hardCommitDocs = Integer.parseInt(x);
+		}
+		timer = new Timer("CommitManager", true);
+		if (hardCommitInterval > 0) {
+			long period = Math.min(1000, hardCommitInterval);
+			timer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					boolean isDue;
+					synchronized(CommitManager.this) {
+						isDue = pending > 0 && System.currentTimeMillis() - firstPending >= hardCommitInterval;
+					}
+					if (isDue)
+						hardCommit(false);
+				}
+			}, period, period);
+		}
+	}
+
+	/**
+	 * @return the <code>commitWithin</code> to send with an update;
+	 *  <code>-1</code> means none
+	 */
+	public int getCommitWithin() {
+		return (softCommitWithin > 0) ? softCommitWithin : -1;
+	}
+
+	/**
+	 * Called after an update request has succeeded
+	 * @param docs number of documents added, updated or deleted
+	 */
+	public void updated(int docs) {
+		if (softCommitWithin == 0) {
+			try {
+				server.commit(true, true, true);
+			} catch (Exception e) {
+				log.logError("CommitManager soft commit "+e.getMessage(), e);
+			}
+		}
+		boolean isDue = false;
+		synchronized(this) {
+			if (pending == 0)
+				firstPending = System.currentTimeMillis();
+			pending += docs;
+			isDue = hardCommitDocs > 0 && pending >= hardCommitDocs;
+		}
+		if (isDue) {
+			//not on the caller's thread
+			timer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					hardCommit(false);
+				}
+			}, 0);
+		}
+	}
+
+	/**
+	 * Durability barrier: a hard commit of everything sent so far, which
+	 * returns once the new searcher is open
+	 * @return
+	 */
+	public IResult flush() {
+		return hardCommit(true);
+	}
+
+	/**
+	 * @param isBarrier <code>true</code> to commit even with nothing pending, and wait for the searcher
+	 * @return
+	 */
+	IResult hardCommit(boolean isBarrier) {
+		IResult result = new ResultPojo();
+		int count;
+		long first;
+		synchronized(this) {
+			if (pending == 0 && !isBarrier)
+				return result;
+			//updates which arrive during the commit wait for the next one
+			count = pending;
+			first = firstPending;
+			pending = 0;
+		}
+		try {
+			server.commit(true, isBarrier);
+			log.logDebug("CommitManager hard commit "+count);
+		} catch (Exception e) {
+			log.logError("CommitManager hard commit "+e.getMessage(), e);
+			result.addErrorString(e.getMessage());
+			synchronized(this) {
+				firstPending = (pending == 0) ? first : Math.min(first, firstPending);
+				pending += count;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Stop the timer and commit what is pending
+	 */
+	public void shutDown() {
+		timer.cancel();
+		hardCommit(false);
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr;
+
+import java.util.*;
+
+import org.topicquests.common.api.ITopicQuestsOntology;
+
+/**
+ * <p>Named field lists for queries which need only part of each node.</p>
+ * <p>Every projection includes the fields needed to filter on credentials.
+ * Nodes fetched with a projection other than {@link #FULL} are marked partial:
+ * they are never cached, and cannot be used to update a node</p>
+ * @author park
+ *
+ */
+public class FieldProjection {
+	/** every stored field */
+	public static final String FULL = "full";
+	/** enough to list nodes: locator, labels, icons, type */
+	public static final String SUMMARY = "summary";
+	/** enough to walk tuples: subject, object, relation */
+	public static final String TUPLE_ENDPOINTS = "tupleEndpoints";
+	
+	private static final String [] ACCESS_FIELDS = {
+		ITopicQuestsOntology.LOCATOR_PROPERTY,
+		ITopicQuestsOntology.IS_PRIVATE_PROPERTY,
+		ITopicQuestsOntology.RESTRICTION_PROPERTY_TYPE,
+		//a private node with no restrictions is its creator's
+		ITopicQuestsOntology.CREATOR_ID_PROPERTY
+	};
+	private static final Map<String,String[]> presets = new HashMap<String,String[]>();
+	static {
+		presets.put(SUMMARY, with(
+				ITopicQuestsOntology.LABEL_PROPERTY,
+				ITopicQuestsOntology.SMALL_LABEL_PROPERTY,
+				ITopicQuestsOntology.SMALL_IMAGE_PATH,
+				ITopicQuestsOntology.INSTANCE_OF_PROPERTY_TYPE));
+		presets.put(TUPLE_ENDPOINTS, with(
+				ITopicQuestsOntology.TUPLE_SUBJECT_PROPERTY,
+				ITopicQuestsOntology.TUPLE_SUBJECT_TYPE_PROPERTY,
+				ITopicQuestsOntology.TUPLE_OBJECT_PROPERTY,
+				ITopicQuestsOntology.TUPLE_OBJECT_TYPE_PROPERTY,
+				ITopicQuestsOntology.INSTANCE_OF_PROPERTY_TYPE));
+	}
+	
+	/**
+	 * @param projection a preset name, or a comma separated field list;
+	 *  <code>null</code> means {@link #FULL}
+	 * @return <code>null</code> for all fields
+	 */
+	public static String [] fields(String projection) {
+		if (isFull(projection))
+			return null;
+		String [] result = presets.get(projection);
+		if (result != null)
+			return result;
+		return with(projection.split("\\s*,\\s*"));
+	}
+	
+	public static boolean isFull(String projection) {
+		return (projection == null || projection.equals(FULL));
+	}
+	
+	static String [] with(String... fields) {
+		Set<String> result = new LinkedHashSet<String>(Arrays.asList(ACCESS_FIELDS));
+		for (int i=0;i<fields.length;i++) {
+			if (!fields[i].equals(""))
+				result.add(fields[i]);
+		}
+		return result.toArray(new String[result.size()]);
+	}
+}
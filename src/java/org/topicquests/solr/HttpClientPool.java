@@ -0,0 +1,160 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.solr.client.solrj.impl.HttpClientUtil;
+import org.topicquests.util.LoggingPlatform;
+
+/**
+ * <p>One pooled {@link HttpClient} for every Solr request a client sends</p>
+ * <p>Configured from:
+ * <ul><li><code>HttpMaxConnections</code>, <code>HttpMaxConnectionsPerRoute</code>: pool sizes</li>
+ * <li><code>HttpKeepAlive</code>: milliseconds an idle connection is kept when
+ *  the server does not say; <code>HttpIdleTimeout</code>: milliseconds after which
+ *  idle connections are closed by the monitor</li>
+ * <li><code>HttpStaleCheck</code>: Yes = test a pooled connection before reuse</li>
+ * <li><code>HttpCompression</code>: Yes = ask for gzip or deflate responses</li>
+ * <li><code>HttpConnectTimeout</code>, <code>HttpSocketTimeout</code>: milliseconds</li></ul></p>
+ * <p>Each request samples the pool, so that {@link #getStats()} can report the
+ * highest number of leased connections and of threads waiting for one,
+ * with the live figures; a monitor thread closes expired and idle connections</p>
+ * @author park
+ *
+ */
+public class HttpClientPool {
+	private LoggingPlatform log = LoggingPlatform.getInstance();
+	private PoolingClientConnectionManager manager;
+	private DefaultHttpClient client;
+	private long idleTimeout = 60000;
+	private Timer monitor;
+	/** guarded by <code>this</code> */
+	private long requests = 0, waitedRequests = 0;
+	private int peakLeased = 0, peakPending = 0;
+	/** milliseconds between idle connection sweeps */
+	private static final long MONITOR_PERIOD = 5000;
+
+	/**
+	 * @param properties the configuration; can be <code>null</code>
+	 */
+	public HttpClientPool(Map<String,Object> properties) {
+		Map<String,Object> p = (properties == null) ? new HashMap<String,Object>() : properties;
+		final long keepAlive = getLong(p, "HttpKeepAlive", 30000);
+		idleTimeout = getLong(p, "HttpIdleTimeout", 60000);
+		manager = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault());
+		manager.setMaxTotal((int)getLong(p, "HttpMaxConnections", 100));
+		manager.setDefaultMaxPerRoute((int)getLong(p, "HttpMaxConnectionsPerRoute", 50));
+		client = new DefaultHttpClient(manager);
+		client.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+			private ConnectionKeepAliveStrategy fromServer = new DefaultConnectionKeepAliveStrategy();
+			@Override
+			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+				long d = fromServer.getKeepAliveDuration(response, context);
+				return (d > 0) ? d : keepAlive;
+			}
+		});
+		client.addRequestInterceptor(new HttpRequestInterceptor() {
+			@Override
+			public void process(HttpRequest request, HttpContext context) {
+				sample();
+			}
+		});
+		HttpConnectionParams.setStaleCheckingEnabled(client.getParams(), isYes(p, "HttpStaleCheck", true));
+		HttpClientUtil.setAllowCompression(client, isYes(p, "HttpCompression", true));
+		HttpClientUtil.setConnectionTimeout(client, (int)getLong(p, "HttpConnectTimeout", 10000));
+		HttpClientUtil.setSoTimeout(client, (int)getLong(p, "HttpSocketTimeout", 60000));
+		monitor = new Timer("HttpClientPool", true);
+		monitor.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				manager.closeExpiredConnections();
+				manager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+			}
+		}, MONITOR_PERIOD, MONITOR_PERIOD);
+	}
+
+	long getLong(Map<String,Object> p, String key, long defaultValue) {
+		String x = (String)p.get(key);
+		return (x == null) ? defaultValue : Long.parseLong(x);
+	}
+
+	boolean isYes(Map<String,Object> p, String key, boolean defaultValue) {
+		String x = (String)p.get(key);
+		return (x == null) ? defaultValue : x.equalsIgnoreCase("Yes");
+	}
+
+	public HttpClient getHttpClient() {
+		return client;
+	}
+
+	/**
+	 * Called as each request goes out, on a leased connection
+	 */
+	void sample() {
+		PoolStats s = manager.getTotalStats();
+		synchronized(this) {
+			requests++;
+			if (s.getLeased() > peakLeased)
+				peakLeased = s.getLeased();
+			if (s.getPending() > peakPending)
+				peakPending = s.getPending();
+			if (s.getPending() > 0)
+				waitedRequests++;
+		}
+		if (s.getPending() > 0)
+			log.logDebug("HttpClientPool threads waiting "+s);
+	}
+
+	/**
+	 * Pool utilisation
+	 * @return <code>leased</code>, <code>pending</code>, <code>available</code>,
+	 *  <code>max</code> now; since startup, <code>requests</code>, <code>peakLeased</code>,
+	 *  <code>peakPending</code>, and <code>waitedRequests</code>: requests sent while
+	 *  other threads waited for a connection
+	 */
+	public synchronized Map<String,Long> getStats() {
+		PoolStats s = manager.getTotalStats();
+		Map<String,Long> result = new LinkedHashMap<String,Long>();
+		result.put("leased", new Long(s.getLeased()));
+		result.put("pending", new Long(s.getPending()));
+		result.put("available", new Long(s.getAvailable()));
+		result.put("max", new Long(s.getMax()));
+		result.put("requests", new Long(requests));
+		result.put("peakLeased", new Long(peakLeased));
+		result.put("peakPending", new Long(peakPending));
+		result.put("waitedRequests", new Long(waitedRequests));
+		return result;
+	}
+
+	public void shutDown() {
+		monitor.cancel();
+		manager.shutdown();
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr;
+
+import java.util.*;
+
+import org.topicquests.common.ResultPojo;
+import org.topicquests.common.api.IResult;
+import org.topicquests.common.api.ITopicQuestsOntology;
+import org.topicquests.model.api.IGraphQuery;
+import org.topicquests.model.api.INode;
+import org.topicquests.model.api.ITupleQuery;
+import org.topicquests.solr.api.ISolrDataProvider;
+import org.topicquests.solr.cache.TupleAdjacencyIndex;
+
+/**
+ * <p>Answers subject/object neighborhood queries from a {@link TupleAdjacencyIndex}:
+ * the index gives the tuple locators, which are then fetched by locator, from the
+ * node cache if possible, subject to credentials; the node queries then fetch
+ * the tuples' endpoints in one more request.</p>
+ * <p>Until the index is built, and for queries the index cannot answer
+ * (scopes, roles), this delegates to {@link SolrTupleQuery}</p>
+ * @author park
+ *
+ */
+public class IndexedTupleQuery implements ITupleQuery {
+	private ISolrDataProvider database;
+	private ITupleQuery delegate;
+	private TupleAdjacencyIndex index;
+	/** same page size as {@link SolrTupleQuery} */
+	private static final int DEFAULT_COUNT = 50;
+
+	public IndexedTupleQuery(ISolrDataProvider db, ITupleQuery d, TupleAdjacencyIndex idx) {
+		database = db;
+		delegate = d;
+		index = idx;
+	}
+
+	@Override
+	public IResult listTuplesBySubject(String subjectLocator, Set<String> credentials) {
+		if (!index.isReady())
+			return delegate.listTuplesBySubject(subjectLocator, credentials);
+		return fetch(index.listTuplesBySubject(subjectLocator, null, null), 0, DEFAULT_COUNT, credentials);
+	}
+
+	@Override
+	public IResult listTuplesByObjectLocator(String objectLocator, Set<String> credentials) {
+		if (!index.isReady())
+			return delegate.listTuplesByObjectLocator(objectLocator, credentials);
+		return fetch(index.listTuplesByObject(objectLocator, null), 0, DEFAULT_COUNT, credentials);
+	}
+
+	@Override
+	public IResult listTuplesByPredTypeAndObject(String predType, String obj,
+			int start, int count, Set<String> credentials) {
+		if (!index.isReady())
+			return delegate.listTuplesByPredTypeAndObject(predType, obj, start, count, credentials);
+		return fetch(index.listTuplesByObject(obj, predType), start, count, credentials);
+	}
+
+	@Override
+	public IResult listTuplesBySubjectAndPredType(String subjectLocator,
+			String predType, int start, int count, Set<String> credentials) {
+		if (!index.isReady())
+			return delegate.listTuplesBySubjectAndPredType(subjectLocator, predType, start, count, credentials);
+		return fetch(index.listTuplesBySubject(subjectLocator, predType, null), start, count, credentials);
+	}
+
+	@Override
+	public IResult listSubjectNodesByObjectAndRelation(String objectLocator,
+			String relationLocator, Set<String> credentials) {
+		if (!index.isReady())
+			return delegate.listSubjectNodesByObjectAndRelation(objectLocator, relationLocator, credentials);
+		IResult tuples = fetch(index.listTuplesByObject(objectLocator, relationLocator), 0, DEFAULT_COUNT, credentials);
+		return SolrTupleQuery.fetchEndpoints(database, tuples, objectLocator, false, true, credentials);
+	}
+
+	@Override
+	public IResult listObjectNodesBySubjectAndRelation(String subjectLocator,
+			String relationLocator, Set<String> credentials) {
+		if (!index.isReady())
+			return delegate.listObjectNodesBySubjectAndRelation(subjectLocator, relationLocator, credentials);
+		//only nodes, not literals
+		IResult tuples = fetch(index.listTuplesBySubject(subjectLocator, relationLocator, ITopicQuestsOntology.NODE_TYPE),
+				0, DEFAULT_COUNT, credentials);
+		return SolrTupleQuery.fetchEndpoints(database, tuples, subjectLocator, true, false, credentials);
+	}
+
+	@Override
+	public IResult listNeighbors(String locator, String relationLocator,
+			int direction, int start, int count, Set<String> credentials) {
+		if (!index.isReady())
+			return delegate.listNeighbors(locator, relationLocator, direction, start, count, credentials);
+		List<String> tupleLocators = new ArrayList<String>();
+		if (direction != IGraphQuery.INCOMING)
+			tupleLocators.addAll(index.listTuplesBySubject(locator, relationLocator, null));
+		if (direction != IGraphQuery.OUTGOING)
+			tupleLocators.addAll(index.listTuplesByObject(locator, relationLocator));
+		//tuples are usually in the node cache; their endpoints then take one request
+		IResult tuples = fetch(tupleLocators, start, count, credentials);
+		return SolrTupleQuery.fetchEndpoints(database, tuples, locator,
+				direction != IGraphQuery.INCOMING, direction != IGraphQuery.OUTGOING, credentials);
+	}
+
+	@Override
+	public IResult listObjectNodesBySubjectAndRelationAndScope(
+			String subjectLocator, String relationLocator, String scopeLocator,
+			Set<String> credentials) {
+		return delegate.listObjectNodesBySubjectAndRelationAndScope(subjectLocator, relationLocator, scopeLocator, credentials);
+	}
+
+	@Override
+	public IResult listSubjectNodesByObjectAndRelationAndScope(
+			String objectLocator, String relationLocator, String scopeLocator,
+			Set<String> credentials) {
+		return delegate.listSubjectNodesByObjectAndRelationAndScope(objectLocator, relationLocator, scopeLocator, credentials);
+	}
+
+	@Override
+	public IResult listSubjectNodesByRelationAndObjectRole(
+			String relationLocator, String objectRoleLocator, Set<String> credentials) {
+		return delegate.listSubjectNodesByRelationAndObjectRole(relationLocator, objectRoleLocator, credentials);
+	}
+
+	@Override
+	public IResult listSubjectNodesByRelationAndSubjectRole(
+			String relationLocator, String subjectRoleLocator, Set<String> credentials) {
+		return delegate.listSubjectNodesByRelationAndSubjectRole(relationLocator, subjectRoleLocator, credentials);
+	}
+
+	@Override
+	public IResult listObjectNodesByRelationAndSubjectRole(
+			String relationLocator, String subjectRoleLocator, Set<String> credentials) {
+		return delegate.listObjectNodesByRelationAndSubjectRole(relationLocator, subjectRoleLocator, credentials);
+	}
+
+	@Override
+	public IResult listObjectNodesByRelationAndObjectRole(
+			String relationLocator, String objectRoleLocator, Set<String> credentials) {
+		return delegate.listObjectNodesByRelationAndObjectRole(relationLocator, objectRoleLocator, credentials);
+	}
+
+	/**
+	 * Fetch one page of the tuples in <code>tupleLocators</code> which
+	 * <code>credentials</code> may see; <code>start</code> and <code>count</code>
+	 * count visible tuples, so locators are fetched until the page is full
+	 * @param tupleLocators
+	 * @param start
+	 * @param count <code>-1</code> means all
+	 * @param credentials
+	 * @return
+	 */
+	IResult fetch(List<String> tupleLocators, int start, int count, Set<String> credentials) {
+		IResult result = new ResultPojo();
+		List<INode> page = new ArrayList<INode>();
+		result.setResultObject(page);
+		int len = tupleLocators.size();
+		int from = 0;
+		int skipped = 0;
+		int want, to;
+		IResult r;
+		List<INode> nodes;
+		Iterator<INode> itr;
+		while (from < len && (count < 0 || page.size() < count)) {
+			//every locator might be visible: ask for no more than are still wanted
+			want = (count < 0) ? len : (start - skipped) + (count - page.size());
+			to = Math.min(len, from + Math.max(1, want));
+			r = database.getNodes(tupleLocators.subList(from, to), credentials);
+			if (r.hasError())
+				result.addErrorString(r.getErrorString());
+			nodes = (List<INode>)r.getResultObject();
+			if (nodes != null) {
+				itr = nodes.iterator();
+				while (itr.hasNext() && (count < 0 || page.size() < count)) {
+					if (skipped < start) {
+						itr.next();
+						skipped++;
+					} else
+						page.add(itr.next());
+				}
+			}
+			from = to;
+		}
+		return result;
+	}
+}
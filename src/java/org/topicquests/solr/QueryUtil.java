@@ -15,6 +15,13 @@
  */
 package org.topicquests.solr;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.topicquests.common.api.ITopicQuestsOntology;
+
 /**
  * @author park
  *
@@ -77,6 +84,67 @@ public class QueryUtil {
 		 return x;
 	 }
 	
+	/**
+	 * Build a disjunction such as <code>field:(a OR b OR c)</code>
+	 * @param field
+	 * @param values each is escaped
+	 * @return
+	 */
+	public static String orQuery(String field, List<String> values) {
+		StringBuilder buf = new StringBuilder(field);
+		buf.append(":(");
+		Iterator<String>itr = values.iterator();
+		boolean isFirst = true;
+		while (itr.hasNext()) {
+			if (!isFirst)
+				buf.append(" OR ");
+			isFirst = false;
+			buf.append(escapeQueryCulprits(itr.next()));
+		}
+		buf.append(")");
+		return buf.toString();
+	}
+	
+	/**
+	 * A filter query with the same meaning as the credentials test applied
+	 * to fetched documents: public, or private with a restriction in
+	 * <code>credentials</code>, or private, unrestricted and created by one of
+	 * <code>credentials</code>
+	 * @param credentials can be <code>null</code>
+	 * @return
+	 */
+	public static String credentialFilter(Set<String> credentials) {
+		String result = "(*:* -"+ITopicQuestsOntology.IS_PRIVATE_PROPERTY+":true)";
+		if (credentials == null || credentials.isEmpty())
+			return result;
+		List<String> creds = new ArrayList<String>(credentials);
+		return result+" OR "+orQuery(ITopicQuestsOntology.RESTRICTION_PROPERTY_TYPE, creds)+
+				" OR ("+orQuery(ITopicQuestsOntology.CREATOR_ID_PROPERTY, creds)+
+				" -"+ITopicQuestsOntology.RESTRICTION_PROPERTY_TYPE+":[* TO *])";
+	}
+	
+	/**
+	 * Documents whose <code>to</code> field equals the <code>from</code> field
+	 * of a document matching <code>query</code>, in one request
+	 * @param from
+	 * @param to
+	 * @param query
+	 * @return
+	 */
+	public static String joinQuery(String from, String to, String query) {
+		return "{!join from="+from+" to="+to+"}"+query;
+	}
+	
+	/**
+	 * Wrap <code>query</code>, e.g. one with local params, so that it can be
+	 * combined with other clauses
+	 * @param query
+	 * @return
+	 */
+	public static String nestedQuery(String query) {
+		return "_query_:\""+query.replace("\\", "\\\\").replace("\"", "\\\"")+"\"";
+	}
+	
 	public static String unEscapeQueryCulprits(String s) {
 		StringBuilder sb = new StringBuilder();
 		int len = s.length();
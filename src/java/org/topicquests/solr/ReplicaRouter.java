@@ -0,0 +1,309 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.HttpClient;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.impl.XMLResponseParser;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.SolrParams;
+import org.topicquests.util.LoggingPlatform;
+
+/**
+ * <p>Sends queries to read replicas of the master core; updates and
+ * real-time gets stay with the master</p>
+ * <p>Each query goes to the healthy replica with the fewest requests in
+ * flight. A replica which fails a request, other than with a client error
+ * such as a bad query, is marked down and the query is sent to the master;
+ * every <code>ReplicaHealthInterval</code> milliseconds each replica is
+ * pinged and marked up or down. With no replica up, queries go to the master</p>
+ * <p>{@link #hedgedQuery} also sends the query to a second replica, or the
+ * master, if the first has not answered within <code>HedgeDelay</code>
+ * milliseconds, and returns whichever answers first</p>
+ * <p>Replicas trail the master by their replication interval</p>
+ * @author park
+ *
+ */
+public class ReplicaRouter {
+	private LoggingPlatform log = LoggingPlatform.getInstance();
+	private SolrServer master;
+	private List<Replica> replicas = new ArrayList<Replica>();
+	private long hedgeDelay = 50;
+	private Timer healthCheck;
+	private ExecutorService executor;
+	/** rotates the first replica tried, among those equally busy */
+	private AtomicInteger next = new AtomicInteger();
+	/** guarded by <code>this</code> */
+	private long requests = 0, failovers = 0, hedges = 0, hedgeWins = 0;
+
+	/**
+	 * @param master
+	 * @param urls the replica core URLs
+	 * @param client the pooled client shared with <code>master</code>
+	 * @param properties the configuration; can be <code>null</code>
+	 */
+	public ReplicaRouter(SolrServer master, List<String> urls, HttpClient client, Map<String,Object> properties) {
+		this.master = master;
+		long interval = 5000;
+		if (properties != null) {
+			String x = (String)properties.get("ReplicaHealthInterval");
+			if (x != null)
+				interval = Long.parseLong(x);
+			x = (String)properties.get("HedgeDelay");
+			if (x != null)
+				hedgeDelay = Long.parseLong(x);
+		}
+		for (int i=0;i<urls.size();i++)
+			replicas.add(new Replica(urls.get(i), new HttpSolrServer(urls.get(i), client, new XMLResponseParser())));
+		final AtomicInteger count = new AtomicInteger();
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ReplicaRouter-"+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		healthCheck = new Timer("ReplicaRouter", true);
+		if (interval > 0) {
+			healthCheck.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					checkHealth();
+				}
+			}, interval, interval);
+		}
+	}
+
+	/**
+	 * Ping every replica, and mark it up or down
+	 */
+	void checkHealth() {
+		Replica r;
+		for (int i=0;i<replicas.size();i++) {
+			r = replicas.get(i);
+			try {
+				r.server.ping();
+				if (!r.isUp)
+					log.logDebug("ReplicaRouter up "+r.url);
+				r.isUp = true;
+			} catch (Exception e) {
+				markDown(r, e);
+			}
+		}
+	}
+
+	void markDown(Replica r, Exception e) {
+		if (r.isUp)
+			log.logError("ReplicaRouter down "+r.url+" "+e.getMessage(), null);
+		r.isUp = false;
+	}
+
+	/**
+	 * @param exclude can be <code>null</code>
+	 * @return the healthy replica with the fewest requests in flight, other than
+	 *  <code>exclude</code>, or <code>null</code> if there is none
+	 */
+	Replica choose(Replica exclude) {
+		int len = replicas.size();
+		int first = (next.getAndIncrement() & Integer.MAX_VALUE) % len;
+		Replica result = null, r;
+		for (int i=0;i<len;i++) {
+			r = replicas.get((first + i) % len);
+			if (r.isUp && r != exclude &&
+				(result == null || r.outstanding.get() < result.outstanding.get()))
+				result = r;
+		}
+		return result;
+	}
+
+	/**
+	 * @param e
+	 * @return <code>true</code> if the query itself was at fault, so another
+	 *  server would fail it too
+	 */
+	boolean isClientError(Exception e) {
+		if (e instanceof SolrException) {
+			int code = ((SolrException)e).code();
+			return code >= 400 && code < 500;
+		}
+		return false;
+	}
+
+	/**
+	 * Send <code>params</code> to one replica, the master if it fails
+	 * @param params
+	 * @return
+	 * @throws Exception
+	 */
+	public QueryResponse query(SolrParams params) throws Exception {
+		synchronized(this) {
+			requests++;
+		}
+		Replica r = choose(null);
+		if (r == null)
+			return master.query(params);
+		try {
+			return r.query(params);
+		} catch (Exception e) {
+			if (isClientError(e))
+				throw e;
+			synchronized(this) {
+				failovers++;
+			}
+			return master.query(params);
+		}
+	}
+
+	/**
+	 * Send <code>params</code> to one replica and, if it has not answered within
+	 * the hedge delay, to another or the master as well
+	 * @param params
+	 * @return the first answer
+	 * @throws Exception if both fail
+	 */
+	public QueryResponse hedgedQuery(SolrParams params) throws Exception {
+		synchronized(this) {
+			requests++;
+		}
+		Replica first = choose(null);
+		if (first == null)
+			return master.query(params);
+		CompletionService<QueryResponse> answers = new ExecutorCompletionService<QueryResponse>(executor);
+		Map<Future<QueryResponse>,Replica> sent = new HashMap<Future<QueryResponse>,Replica>();
+		sent.put(answers.submit(task(first, params)), first);
+		boolean isHedged = false;
+		Future<QueryResponse> f = answers.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+		if (f == null) {
+			//null means the master
+			Replica second = choose(first);
+			sent.put(answers.submit(task(second, params)), second);
+			isHedged = true;
+			synchronized(this) {
+				hedges++;
+			}
+		}
+		Exception error = null;
+		Replica r;
+		while (!sent.isEmpty()) {
+			if (f == null)
+				f = answers.take();
+			r = sent.remove(f);
+			try {
+				QueryResponse result = f.get();
+				if (isHedged && r != first) {
+					synchronized(this) {
+						hedgeWins++;
+					}
+				}
+				//a slower request is left to finish
+				return result;
+			} catch (ExecutionException e) {
+				error = (e.getCause() instanceof Exception) ? (Exception)e.getCause() : e;
+				if (isClientError(error))
+					throw error;
+				if (!isHedged && r == first) {
+					//failed before the hedge delay
+					sent.put(answers.submit(task(null, params)), null);
+					synchronized(this) {
+						failovers++;
+					}
+				}
+			}
+			f = null;
+		}
+		throw error;
+	}
+
+	/**
+	 * @param r <code>null</code> means the master
+	 * @param params
+	 * @return
+	 */
+	Callable<QueryResponse> task(final Replica r, final SolrParams params) {
+		return new Callable<QueryResponse>() {
+			@Override
+			public QueryResponse call() throws Exception {
+				return (r == null) ? master.query(params) : r.query(params);
+			}
+		};
+	}
+
+	/**
+	 * @return <code>requests</code>, <code>failovers</code> to the master,
+	 *  <code>hedges</code> sent and <code>hedgeWins</code>: hedges which answered
+	 *  first; and per replica URL, requests in flight, or <code>-1</code> if down
+	 */
+	public synchronized Map<String,Long> getStats() {
+		Map<String,Long> result = new LinkedHashMap<String,Long>();
+		result.put("requests", new Long(requests));
+		result.put("failovers", new Long(failovers));
+		result.put("hedges", new Long(hedges));
+		result.put("hedgeWins", new Long(hedgeWins));
+		Replica r;
+		for (int i=0;i<replicas.size();i++) {
+			r = replicas.get(i);
+			result.put(r.url, new Long(r.isUp ? r.outstanding.get() : -1));
+		}
+		return result;
+	}
+
+	public void shutDown() {
+		healthCheck.cancel();
+		executor.shutdown();
+		for (int i=0;i<replicas.size();i++)
+			replicas.get(i).server.shutdown();
+	}
+
+	class Replica {
+		String url;
+		HttpSolrServer server;
+		AtomicInteger outstanding = new AtomicInteger();
+		volatile boolean isUp = true;
+
+		Replica(String url, HttpSolrServer server) {
+			this.url = url;
+			this.server = server;
+		}
+
+		QueryResponse query(SolrParams params) throws Exception {
+			outstanding.incrementAndGet();
+			try {
+				return server.query(params);
+			} catch (Exception e) {
+				if (!isClientError(e))
+					markDown(this, e);
+				throw e;
+			} finally {
+				outstanding.decrementAndGet();
+			}
+		}
+	}
+}
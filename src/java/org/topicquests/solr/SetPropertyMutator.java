@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.topicquests.solr.api.IPartialUpdateMutator;
+
+/**
+ * <code>set</code> a property to a value, whatever it was
+ * @author park
+ *
+ */
+public class SetPropertyMutator implements IPartialUpdateMutator {
+	private String key;
+	private Object value;
+
+	public SetPropertyMutator(String key, Object value) {
+		this.key = key;
+		this.value = value;
+	}
+
+	@Override
+	public Map<String, Object> mutate(Map<String, Object> current) {
+		Map<String,Object> result = new HashMap<String,Object>();
+		Map<String,Object> op = new HashMap<String,Object>();
+		op.put("set", value);
+		result.put(key, op);
+		return result;
+	}
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr;
+
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.topicquests.common.ResultPojo;
+import org.topicquests.common.api.IResult;
+import org.topicquests.common.api.ITopicQuestsOntology;
+import org.topicquests.solr.api.ISolrClient;
+import org.topicquests.solr.cache.WriteOverlay;
+import org.topicquests.util.LoggingPlatform;
+
+/**
+ * <p>{@link ISolrClient} over several standalone Solr cores, without SolrCloud.
+ * <code>SolrURL</code> lists the cores, separated by commas; each is a
+ * {@link Solr3Client}, and all share one {@link HttpClientPool}</p>
+ * <p>Each document lives on the core its locator hashes to, on a consistent
+ * hash ring with <code>ShardVirtualNodes</code> points per core (default 128),
+ * placed by core URL: adding a core moves about <code>1/N</code> of the documents.
+ * Writes, real-time gets, deletes, and queries which require a locator
+ * go to that core alone</p>
+ * <p>Other queries go to every core at once. Each core returns its first
+ * <code>start + count</code> hits with their scores, and the hits are merged by
+ * score; deep pages therefore cost more than on one core, and scores are
+ * local to each core. Counts are summed; facet counts are summed over an
+ * over-requested top list from each core, so a value near the cut can be missed</p>
+ * <p>Joins see only the core they run on</p>
+ * <p><code>SolrReadURLs</code>, if given, lists each core's read replicas,
+ * separated by commas, with the cores' lists separated by semicolons</p>
+ * @author park
+ *
+ */
+public class ShardedSolrClient implements ISolrClient {
+	private LoggingPlatform log = LoggingPlatform.getInstance();
+	private Map<String,Object> configuration = null;
+	private List<Solr3Client> shards = new ArrayList<Solr3Client>();
+	/** hash point to shard index */
+	private TreeMap<Integer,Integer> ring = new TreeMap<Integer,Integer>();
+	private HttpClientPool pool;
+	private ExecutorService executor;
+	private static final String SCORE = "score";
+
+	@Override
+	public void setConfiguration(Map<String,Object> properties) {
+		configuration = properties;
+	}
+
+	@Override
+	public void init(String solrURL) throws Exception {
+		int virtualNodes = 128;
+		if (configuration != null && configuration.get("ShardVirtualNodes") != null)
+			virtualNodes = Integer.parseInt((String)configuration.get("ShardVirtualNodes"));
+		pool = new HttpClientPool(configuration);
+		String [] urls = solrURL.split(",");
+		//one group of read replicas per core, in the same order
+		String x = (configuration == null) ? null : (String)configuration.get("SolrReadURLs");
+		String [] readURLs = (x == null) ? new String[0] : x.split(";");
+		String url;
+		Solr3Client c;
+		Map<String,Object> props;
+		for (int i=0;i<urls.length;i++) {
+			url = urls[i].trim();
+			if (url.length() == 0)
+				continue;
+			props = (configuration == null) ? new HashMap<String,Object>() : new HashMap<String,Object>(configuration);
+			props.remove("SolrReadURLs");
+			if (shards.size() < readURLs.length)
+				props.put("SolrReadURLs", readURLs[shards.size()]);
+			c = new Solr3Client();
+			c.setConfiguration(props);
+			c.init(url, pool);
+			for (int j=0;j<virtualNodes;j++)
+				ring.put(new Integer(hash(url+"#"+j)), new Integer(shards.size()));
+			shards.add(c);
+		}
+		if (shards.isEmpty())
+			throw new Exception("ShardedSolrClient: no cores in "+solrURL);
+		final AtomicInteger count = new AtomicInteger();
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ShardedSolrClient-"+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		log.logDebug("ShardedSolrClient "+shards.size()+" cores");
+	}
+
+	/**
+	 * The first core's server; there is no single server for all of them
+	 */
+	@Override
+	public SolrServer getSolrServer() {
+		return shards.get(0).getSolrServer();
+	}
+
+	/**
+	 * @return the cores, in <code>SolrURL</code> order
+	 */
+	public List<Solr3Client> getShards() {
+		return shards;
+	}
+
+	/**
+	 * @param locator
+	 * @return the core which holds <code>locator</code>
+	 */
+	public Solr3Client shardFor(String locator) {
+		if (shards.size() == 1)
+			return shards.get(0);
+		Map.Entry<Integer,Integer> e = ring.ceilingEntry(new Integer(hash(locator)));
+		if (e == null)
+			e = ring.firstEntry(); //wrap around
+		return shards.get(e.getValue().intValue());
+	}
+
+	/**
+	 * First four bytes of the MD5 digest, which spread similar locators evenly
+	 * @param s
+	 * @return
+	 */
+	static int hash(String s) {
+		try {
+			byte [] d = MessageDigest.getInstance("MD5").digest(s.getBytes("UTF-8"));
+			return ((d[0] & 0xff) << 24) | ((d[1] & 0xff) << 16) | ((d[2] & 0xff) << 8) | (d[3] & 0xff);
+		} catch (Exception e) {
+			return s.hashCode(); //MD5 and UTF-8 are always there
+		}
+	}
+
+	/**
+	 * @param queryString
+	 * @return the locator a query requires, or <code>null</code>
+	 */
+	String requiredLocator(String queryString) {
+		List<String[]> terms = WriteOverlay.parseTerms(queryString);
+		if (terms != null) {
+			for (int i=0;i<terms.size();i++) {
+				if (terms.get(i)[0].equals(ITopicQuestsOntology.LOCATOR_PROPERTY))
+					return terms.get(i)[1];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param fields
+	 * @return the core for a document or update, which must carry its locator
+	 */
+	Solr3Client shardFor(Map<String,Object> fields) {
+		return shardFor((String)fields.get(ITopicQuestsOntology.LOCATOR_PROPERTY));
+	}
+
+	/**
+	 * Run <code>task</code> against every core at once
+	 * @param task
+	 * @return each core's result, in core order
+	 */
+	List<IResult> fanOut(final ShardTask task) {
+		List<Future<IResult>> futures = new ArrayList<Future<IResult>>();
+		for (int i=0;i<shards.size();i++) {
+			final Solr3Client c = shards.get(i);
+			futures.add(executor.submit(new Callable<IResult>() {
+				@Override
+				public IResult call() {
+					return task.run(c);
+				}
+			}));
+		}
+		List<IResult> result = new ArrayList<IResult>();
+		IResult r;
+		for (int i=0;i<futures.size();i++) {
+			try {
+				r = futures.get(i).get();
+			} catch (Exception e) {
+				log.logError("ShardedSolrClient "+e.getMessage(), e);
+				r = new ResultPojo();
+				r.addErrorString(e.getMessage());
+			}
+			result.add(r);
+		}
+		return result;
+	}
+
+	/**
+	 * @param results
+	 * @return a result which carries every error in <code>results</code>
+	 */
+	IResult errors(List<IResult> results) {
+		IResult result = new ResultPojo();
+		for (int i=0;i<results.size();i++) {
+			if (results.get(i).hasError())
+				result.addErrorString(results.get(i).getErrorString());
+		}
+		return result;
+	}
+
+	@Override
+	public IResult runQuery(String queryString, int start, int count) {
+		return runQuery(queryString, start, count, null);
+	}
+
+	@Override
+	public IResult runQuery(final String queryString, int start, int count, String[] fields) {
+		String lox = requiredLocator(queryString);
+		if (lox != null)
+			return shardFor(lox).runQuery(queryString, start, count, fields);
+		//each core's first start + count, with scores to merge by
+		final int rows = (count < 0) ? -1 : start + count;
+		final String [] fl;
+		if (fields == null)
+			fl = new String [] {"*", SCORE};
+		else {
+			fl = new String[fields.length + 1];
+			System.arraycopy(fields, 0, fl, 0, fields.length);
+			fl[fields.length] = SCORE;
+		}
+		List<IResult> results = fanOut(new ShardTask() {
+			@Override
+			public IResult run(Solr3Client c) {
+				return c.runQuery(queryString, 0, rows, fl);
+			}
+		});
+		IResult result = errors(results);
+		List<SolrDocument> hits = new ArrayList<SolrDocument>();
+		long numFound = 0;
+		SolrDocumentList l;
+		for (int i=0;i<results.size();i++) {
+			l = (SolrDocumentList)results.get(i).getResultObject();
+			if (l != null) {
+				numFound += l.getNumFound();
+				hits.addAll(l);
+			}
+		}
+		//stable, so equal scores keep core order
+		Collections.sort(hits, new Comparator<SolrDocument>() {
+			@Override
+			public int compare(SolrDocument a, SolrDocument b) {
+				return Float.compare(score(b), score(a));
+			}
+		});
+		SolrDocumentList page = new SolrDocumentList();
+		page.setNumFound(numFound);
+		page.setStart(start);
+		int end = (count < 0) ? hits.size() : Math.min(hits.size(), start + count);
+		SolrDocument d;
+		for (int i=start;i<end;i++) {
+			d = hits.get(i);
+			d.removeFields(SCORE);
+			page.add(d);
+		}
+		result.setResultObject(page);
+		return result;
+	}
+
+	float score(SolrDocument d) {
+		Object o = d.getFieldValue(SCORE);
+		return (o instanceof Number) ? ((Number)o).floatValue() : 0;
+	}
+
+	@Override
+	public IResult count(final String queryString, final String filterQuery) {
+		List<IResult> results = fanOut(new ShardTask() {
+			@Override
+			public IResult run(Solr3Client c) {
+				return c.count(queryString, filterQuery);
+			}
+		});
+		IResult result = errors(results);
+		long total = 0;
+		Object o;
+		for (int i=0;i<results.size();i++) {
+			o = results.get(i).getResultObject();
+			if (o != null)
+				total += ((Long)o).longValue();
+		}
+		result.setResultObject(new Long(total));
+		return result;
+	}
+
+	@Override
+	public IResult facet(final String queryString, final String filterQuery, final String field,
+			int limit, int minCount) {
+		//over-request, as Solr's own distributed faceting does
+		final int shardLimit = (limit < 0 || shards.size() == 1) ? limit : (int)(limit * 1.5) + 10;
+		final int shardMinCount = (shards.size() == 1) ? minCount : 1;
+		List<IResult> results = fanOut(new ShardTask() {
+			@Override
+			public IResult run(Solr3Client c) {
+				return c.facet(queryString, filterQuery, field, shardLimit, shardMinCount);
+			}
+		});
+		IResult result = errors(results);
+		Map<String,Long> sums = new HashMap<String,Long>();
+		Map<String,Long> counts;
+		Iterator<Map.Entry<String,Long>> itr;
+		Map.Entry<String,Long> e;
+		Long n;
+		for (int i=0;i<results.size();i++) {
+			counts = (Map<String,Long>)results.get(i).getResultObject();
+			if (counts == null)
+				continue;
+			itr = counts.entrySet().iterator();
+			while (itr.hasNext()) {
+				e = itr.next();
+				n = sums.get(e.getKey());
+				sums.put(e.getKey(), new Long(e.getValue().longValue() + ((n == null) ? 0 : n.longValue())));
+			}
+		}
+		List<Map.Entry<String,Long>> sorted = new ArrayList<Map.Entry<String,Long>>(sums.entrySet());
+		Collections.sort(sorted, new Comparator<Map.Entry<String,Long>>() {
+			@Override
+			public int compare(Map.Entry<String,Long> a, Map.Entry<String,Long> b) {
+				int c = b.getValue().compareTo(a.getValue());
+				return (c != 0) ? c : a.getKey().compareTo(b.getKey());
+			}
+		});
+		Map<String,Long> merged = new LinkedHashMap<String,Long>();
+		for (int i=0;i<sorted.size() && (limit < 0 || merged.size() < limit);i++) {
+			e = sorted.get(i);
+			if (e.getValue().longValue() >= minCount)
+				merged.put(e.getKey(), e.getValue());
+		}
+		result.setResultObject(merged);
+		return result;
+	}
+
+	@Override
+	public IResult updateData(Map<String,Object> fields) {
+		return addData(fields);
+	}
+
+	@Override
+	public IResult partialUpdateData(Map<String,Object> fields) {
+		return shardFor(fields).partialUpdateData(fields);
+	}
+
+	@Override
+	public IResult realTimeGet(String locator) {
+		return shardFor(locator).realTimeGet(locator);
+	}
+
+	@Override
+	public boolean supportsJoin() {
+		//tuples and their endpoints hash to different cores
+		return shards.size() == 1;
+	}
+
+	@Override
+	public IResult deleteByLocator(String locator) {
+		return shardFor(locator).deleteByLocator(locator);
+	}
+
+	@Override
+	public IResult addData(Map<String,Object> fields) {
+		if (fields.isEmpty())
+			return new ResultPojo();
+		return shardFor(fields).addData(fields);
+	}
+
+	@Override
+	public IResult addDataNoMerge(Map<String,Object> fields) {
+		if (fields.isEmpty())
+			return new ResultPojo();
+		return shardFor(fields).addDataNoMerge(fields);
+	}
+
+	@Override
+	public IResult addData(Collection<Map<String,Object>> documents) {
+		//one batch per core, sent at once
+		final Map<Solr3Client,List<Map<String,Object>>> batches = new HashMap<Solr3Client,List<Map<String,Object>>>();
+		Iterator<Map<String,Object>> itr = documents.iterator();
+		Map<String,Object> fields;
+		Solr3Client c;
+		List<Map<String,Object>> batch;
+		while (itr.hasNext()) {
+			fields = itr.next();
+			if (fields.isEmpty())
+				continue;
+			c = shardFor(fields);
+			batch = batches.get(c);
+			if (batch == null) {
+				batch = new ArrayList<Map<String,Object>>();
+				batches.put(c, batch);
+			}
+			batch.add(fields);
+		}
+		List<IResult> results = fanOut(new ShardTask() {
+			@Override
+			public IResult run(Solr3Client c) {
+				List<Map<String,Object>> b = batches.get(c);
+				return (b == null) ? new ResultPojo() : c.addData(b);
+			}
+		});
+		IResult result = errors(results);
+		result.setResultObject(new Integer(0));
+		return result;
+	}
+
+	@Override
+	public IResult getByProxyLocator(String locator, int start, int count) {
+		return shardFor(locator).getByProxyLocator(locator, start, count);
+	}
+
+	@Override
+	public IResult flush() {
+		return errors(fanOut(new ShardTask() {
+			@Override
+			public IResult run(Solr3Client c) {
+				return c.flush();
+			}
+		}));
+	}
+
+	@Override
+	public void shutDown() {
+		for (int i=0;i<shards.size();i++)
+			shards.get(i).shutDown();
+		executor.shutdown();
+		pool.shutDown();
+	}
+
+	/**
+	 * One request to one core
+	 */
+	interface ShardTask {
+		IResult run(Solr3Client c);
+	}
+}
@@ -20,8 +20,10 @@ import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.impl.XMLResponseParser;
+import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 //import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.schema.DateField;
@@ -38,32 +40,105 @@ import org.topicquests.util.LoggingPlatform;
 /**
  * @author park
  * For non-SolrCloud use
+ * <p>Updates and real-time gets go to <code>SolrURL</code>; queries go to the
+ * replicas in <code>SolrReadURLs</code>, by way of a {@link ReplicaRouter},
+ * if there are any</p>
  */
 public class Solr3Client implements ISolrClient {
 	private LoggingPlatform log = LoggingPlatform.getInstance();
 	private HttpSolrServer server;
-	private HttpSolrServer updateServer;
-	private HttpSolrServer harvestServer;
+	private HttpClientPool pool;
+	/** <code>false</code> when the pool is shared */
+	private boolean isPoolOwner = false;
+	private Map<String,Object> configuration = null;
+	/** decides when updates are committed */
+	private CommitManager commits;
+	/** <code>null</code> without read replicas */
+	private ReplicaRouter router = null;
+	/** locator lookups are hedged across replicas */
+	private boolean isHedgedLookup = false;
 	
+	@Override
+	public void setConfiguration(Map<String,Object> properties) {
+		configuration = properties;
+	}
 
 	@Override
 	public void init(String solrURL) throws Exception {
+		init(solrURL, new HttpClientPool(configuration));
+		isPoolOwner = true;
+	}
+
+	/**
+	 * Connect by way of a pool shared with other clients, which shut it down
+	 * @param solrURL
+	 * @param sharedPool
+	 * @throws Exception
+	 */
+	void init(String solrURL, HttpClientPool sharedPool) throws Exception {
 		System.out.println("SERVER "+solrURL);
-		server = new HttpSolrServer(solrURL);
-		server.getHttpClient().getParams().setParameter("update.chain", "merge");
-		server.setParser(new XMLResponseParser());
-		updateServer = new HttpSolrServer(solrURL);
-		updateServer.getHttpClient().getParams().setParameter("update.chain", "partial");
-		updateServer.setParser(new XMLResponseParser());
-		harvestServer = new HttpSolrServer(solrURL);
-		harvestServer.getHttpClient().getParams().setParameter("update.chain", "harvest");
-		harvestServer.setParser(new XMLResponseParser());
+		pool = sharedPool;
+		server = new HttpSolrServer(solrURL, pool.getHttpClient(), new XMLResponseParser());
+		commits = new CommitManager(server, configuration);
+		String readURLs = (configuration == null) ? null : (String)configuration.get("SolrReadURLs");
+		if (readURLs != null && readURLs.trim().length() > 0) {
+			List<String> urls = new ArrayList<String>();
+			String [] x = readURLs.split(",");
+			for (int i=0;i<x.length;i++) {
+				if (x[i].trim().length() > 0)
+					urls.add(x[i].trim());
+			}
+			router = new ReplicaRouter(server, urls, pool.getHttpClient(), configuration);
+			isHedgedLookup = "Yes".equalsIgnoreCase((String)configuration.get("HedgedLocatorReads"));
+		}
+	}
+
+	/**
+	 * @return <code>null</code> unless <code>SolrReadURLs</code> lists replicas
+	 */
+	public ReplicaRouter getReplicaRouter() {
+		return router;
+	}
+
+	/**
+	 * Send a query to a replica if there are any, else to the master
+	 * @param parameters
+	 * @param isHedged see {@link ReplicaRouter#hedgedQuery}
+	 * @return
+	 * @throws Exception
+	 */
+	QueryResponse read(SolrQuery parameters, boolean isHedged) throws Exception {
+		if (router == null)
+			return server.query(parameters);
+		return isHedged ? router.hedgedQuery(parameters) : router.query(parameters);
 	}
 
 	public SolrServer getSolrServer() {
 		return server;
 	}
 	
+	/**
+	 * @return the connection pool, e.g. for its utilisation figures
+	 */
+	public HttpClientPool getConnectionPool() {
+		return pool;
+	}
+	
+	/**
+	 * Send <code>documents</code> with the configured <code>commitWithin</code>
+	 * @param documents
+	 * @return
+	 * @throws Exception
+	 */
+	UpdateResponse add(Collection<SolrInputDocument> documents) throws Exception {
+		UpdateRequest ur = new UpdateRequest();
+		ur.add(documents);
+		ur.setCommitWithin(commits.getCommitWithin());
+		UpdateResponse response = ur.process(server);
+		commits.updated(documents.size());
+		return response;
+	}
+	
 	/**
 	 * Run a query based on <code>queryString</code>
 	 * @param queryString
@@ -72,6 +147,65 @@ public class Solr3Client implements ISolrClient {
 	 * @return  NamedList<Object> in result or error string
 	 */
 	public IResult runQuery(String queryString, int start, int count) {
+		return runQuery(queryString, start, count, null);
+	}
+	
+	@Override
+	public IResult count(String queryString, String filterQuery) {
+		IResult result = new ResultPojo();
+		SolrQuery parameters = new SolrQuery();
+		parameters.set("q", queryString);
+		if (filterQuery != null)
+			parameters.addFilterQuery(filterQuery);
+		parameters.setRows(0);
+		try {
+			QueryResponse x = read(parameters, false);
+			result.setResultObject(new Long(x.getResults().getNumFound()));
+		} catch (Exception e) {
+			log.logError("Solr3Client.count "+e.getMessage()+" "+queryString, e);
+			result.addErrorString(e.getMessage());
+		}
+		return result;
+	}
+	
+	@Override
+	public IResult facet(String queryString, String filterQuery, String field, int limit, int minCount) {
+		IResult result = new ResultPojo();
+		SolrQuery parameters = new SolrQuery();
+		parameters.set("q", queryString);
+		if (filterQuery != null)
+			parameters.addFilterQuery(filterQuery);
+		parameters.setRows(0);
+		parameters.setFacet(true);
+		parameters.addFacetField(field);
+		parameters.setFacetLimit(limit);
+		parameters.setFacetMinCount(minCount);
+		try {
+			QueryResponse x = read(parameters, false);
+			Map<String,Long> counts = new LinkedHashMap<String,Long>();
+			FacetField ff = x.getFacetField(field);
+			if (ff != null && ff.getValues() != null) {
+				Iterator<FacetField.Count>itr = ff.getValues().iterator();
+				FacetField.Count c;
+				while (itr.hasNext()) {
+					c = itr.next();
+					counts.put(c.getName(), new Long(c.getCount()));
+				}
+			}
+			result.setResultObject(counts);
+		} catch (Exception e) {
+			log.logError("Solr3Client.facet "+e.getMessage()+" "+queryString, e);
+			result.addErrorString(e.getMessage());
+		}
+		return result;
+	}
+	
+	@Override
+	public IResult runQuery(String queryString, int start, int count, String [] fields) {
+		return runQuery(queryString, start, count, fields, false);
+	}
+	
+	IResult runQuery(String queryString, int start, int count, String [] fields, boolean isHedged) {
 		System.out.println("Solr3Client.runQuery- "+queryString+" "+start+" "+count);
 		IResult result = new ResultPojo();
 		SolrQuery parameters = new SolrQuery();
@@ -79,11 +213,13 @@ public class Solr3Client implements ISolrClient {
 		parameters.setStart(start);
 		if (count > -1)
 			parameters.setRows(count);
+		if (fields != null)
+			parameters.setFields(fields);
 		//force result as JSON
 //		parameters.set("wt", "json");
 		System.out.println("Solr3Client.runQuery-1 "+parameters.toString());
 		try {
-			QueryResponse x = server.query(parameters);
+			QueryResponse x = read(parameters, isHedged);
 			System.out.println("ZZZZ "+x.getResults());
 			result.setResultObject(x.getResults());
 		} catch (Exception e) {
@@ -113,9 +249,9 @@ public class Solr3Client implements ISolrClient {
 	public IResult deleteByLocator(String locator) {
 		IResult result = new ResultPojo();
 		try {
-			UpdateResponse ur = server.deleteById(locator);
+			UpdateResponse ur = server.deleteById(locator, commits.getCommitWithin());
 			int status = ur.getStatus();
-			server.commit();
+			commits.updated(1);
 			result.setResultObject(new Integer(status));
 		} catch (Exception e) {
 			result.addErrorString(e.getMessage());
@@ -140,10 +276,8 @@ public class Solr3Client implements ISolrClient {
 		try {
 			SolrInputDocument document = mapToDocument(fields);
 			System.out.println("Solr3Client.addData-2 "+document);
-			UpdateResponse response = server.add(document);
+			UpdateResponse response = add(Collections.singletonList(document));
 			status = response.getStatus();
-			//TODO full commit or soft commit?
-			server.commit();
 		} catch (Exception e) {
 			result.addErrorString(e.getMessage());
 			log.logError("Solr3Client.addData error-1 "+e.getMessage()+" "+fields,e);
@@ -169,10 +303,8 @@ public class Solr3Client implements ISolrClient {
 				} //else
 					// result.addErrorString("SolrClient got an empty document");
 			}
-			UpdateResponse response = server.add(docs);
+			UpdateResponse response = add(docs);
 			status = response.getStatus();
-			//TODO full commit or soft commit?
-			server.commit();
 		} catch (Exception e) {
 			result.addErrorString(e.getMessage());
 			log.logError("Solr3Client.addData error-2 "+e.getMessage()+" "+documents,e);
@@ -304,7 +436,7 @@ public class Solr3Client implements ISolrClient {
 	public IResult getByProxyLocator(String locator, int start, int count) {
 		String q = ITopicQuestsOntology.LOCATOR_PROPERTY+":"+locator;
 		System.out.println("QQQ "+q);
-		IResult result = runQuery(q, start, count);
+		IResult result = runQuery(q, start, count, null, isHedgedLookup);
 		return result;		
 	}
 
@@ -314,6 +446,22 @@ public class Solr3Client implements ISolrClient {
 		return addUpdateData(fields);
 	}
 	
+	@Override
+	public IResult realTimeGet(String locator) {
+		IResult result = new ResultPojo();
+		SolrQuery parameters = new SolrQuery();
+		parameters.setRequestHandler("/get");
+		parameters.set("id", locator);
+		try {
+			QueryResponse x = server.query(parameters);
+			result.setResultObject(x.getResponse().get("doc"));
+		} catch (Exception e) {
+			log.logError("Solr3Client.realTimeGet "+e.getMessage()+" "+locator, e);
+			result.addErrorString(e.getMessage());
+		}
+		return result;
+	}
+	
 	///////////////////////////////////////////////
 	// Partial updates use their own kind of map
 	// {
@@ -333,13 +481,14 @@ public class Solr3Client implements ISolrClient {
 			try {
 				SolrInputDocument document = mapToDocument(fields); //updateMapToDocument(fields);
 				log.logDebug("Solr3Client.addUpdateData-2 "+document);
-				UpdateRequest ur = new UpdateRequest();
-				ur.add(document);
-				ur.setCommitWithin(1000);
-				UpdateResponse response = ur.process(updateServer);
+				UpdateResponse response = add(Collections.singletonList(document));
 				status = response.getStatus();
-				//TODO full commit or soft commit?
-				//server.commit();
+			} catch (SolrException e) {
+				//e.g. VERSION_CONFLICT
+				status = e.code();
+				result.addErrorString(e.getMessage());
+				if (status != VERSION_CONFLICT)
+					log.logError("Solr3Client.addUpdateData error-2 "+e.getMessage()+" "+fields,e);
 			} catch (Exception e) {
 				result.addErrorString(e.getMessage());
 				log.logError("Solr3Client.addUpdateData error-1 "+e.getMessage()+" "+fields,e);
@@ -347,9 +496,24 @@ public class Solr3Client implements ISolrClient {
 			result.setResultObject(new Integer(status));
 			return result;
 		}
+	@Override
+	public boolean supportsJoin() {
+		return true;
+	}
+
+	@Override
+	public IResult flush() {
+		return commits.flush();
+	}
+	
 	@Override
 	public void shutDown() {
+		commits.shutDown();
+		if (router != null)
+			router.shutDown();
 		server.shutdown();
+		if (isPoolOwner)
+			pool.shutDown();
 	}
 
 	Map<String,Object> escapeMapQueryCulprits(Map<String,Object> m) {
@@ -394,10 +558,8 @@ public class Solr3Client implements ISolrClient {
 		try {
 			SolrInputDocument document = mapToDocument(fields);
 			System.out.println("Solr3Client.addData-2 "+document);
-			UpdateResponse response = harvestServer.add(document);
+			UpdateResponse response = add(Collections.singletonList(document));
 			status = response.getStatus();
-			//TODO full commit or soft commit?
-			server.commit();
 		} catch (Exception e) {
 			result.addErrorString(e.getMessage());
 			log.logError("Solr3Client.addDataNoMerge error-1 "+e.getMessage()+" "+fields,e);
@@ -17,8 +17,10 @@ package org.topicquests.solr;
 import java.util.*;
 
 import org.apache.solr.client.solrj.impl.CloudSolrServer;
+import org.apache.solr.client.solrj.impl.LBHttpSolrServer;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.UpdateResponse;
 import org.apache.solr.common.SolrInputDocument;
@@ -48,13 +50,21 @@ import org.topicquests.solr.api.ISolrClient;
  */
 public class Solr4Client implements ISolrClient {
 	private CloudSolrServer server; //TODO SolrCloudServer
+	private HttpClientPool pool;
+	private Map<String,Object> configuration = null;
+	/** decides when updates are committed */
+	private CommitManager commits;
 
+	@Override
+	public void setConfiguration(Map<String,Object> properties) {
+		configuration = properties;
+	}
 
 	@Override
 	public void init(String solrURL) throws Exception {
-		server = new CloudSolrServer(solrURL);
-		// TODO Auto-generated method stub
-		
+		pool = new HttpClientPool(configuration);
+		server = new CloudSolrServer(solrURL, new LBHttpSolrServer(pool.getHttpClient()));
+		commits = new CommitManager(server, configuration);
 	}
 	public SolrServer getSolrServer() {
 		return server;
@@ -68,6 +78,61 @@ public class Solr4Client implements ISolrClient {
 	 * @return  NamedList<Object> in result or error string
 	 */
 	public IResult runQuery(String queryString, int start, int count) {
+		return runQuery(queryString, start, count, null);
+	}
+	
+	@Override
+	public IResult count(String queryString, String filterQuery) {
+		IResult result = new ResultPojo();
+		SolrQuery parameters = new SolrQuery();
+		parameters.set("q", queryString);
+		if (filterQuery != null)
+			parameters.addFilterQuery(filterQuery);
+		parameters.setRows(0);
+		try {
+			QueryResponse x = server.query(parameters);
+			result.setResultObject(new Long(x.getResults().getNumFound()));
+		} catch (Exception e) {
+			e.printStackTrace();
+			result.addErrorString(e.getMessage());
+		}
+		return result;
+	}
+	
+	@Override
+	public IResult facet(String queryString, String filterQuery, String field, int limit, int minCount) {
+		IResult result = new ResultPojo();
+		SolrQuery parameters = new SolrQuery();
+		parameters.set("q", queryString);
+		if (filterQuery != null)
+			parameters.addFilterQuery(filterQuery);
+		parameters.setRows(0);
+		parameters.setFacet(true);
+		parameters.addFacetField(field);
+		parameters.setFacetLimit(limit);
+		parameters.setFacetMinCount(minCount);
+		try {
+			QueryResponse x = server.query(parameters);
+			Map<String,Long> counts = new LinkedHashMap<String,Long>();
+			FacetField ff = x.getFacetField(field);
+			if (ff != null && ff.getValues() != null) {
+				Iterator<FacetField.Count>itr = ff.getValues().iterator();
+				FacetField.Count c;
+				while (itr.hasNext()) {
+					c = itr.next();
+					counts.put(c.getName(), new Long(c.getCount()));
+				}
+			}
+			result.setResultObject(counts);
+		} catch (Exception e) {
+			e.printStackTrace();
+			result.addErrorString(e.getMessage());
+		}
+		return result;
+	}
+	
+	@Override
+	public IResult runQuery(String queryString, int start, int count, String [] fields) {
 		System.out.println("Solr4Client.runQuery- "+queryString+" "+start+" "+count);
 		IResult result = new ResultPojo();
 		SolrQuery parameters = new SolrQuery();
@@ -75,6 +140,8 @@ public class Solr4Client implements ISolrClient {
 		parameters.setStart(start);
 		if (count > -1)
 			parameters.setRows(count);
+		if (fields != null)
+			parameters.setFields(fields);
 		//force result as JSON
 //		parameters.set("wt", "json");
 		System.out.println("Solr4Client.runQuery-1 "+parameters.toString());
@@ -120,8 +187,8 @@ public class Solr4Client implements ISolrClient {
 	public IResult deleteByLocator(String locator) {
 		IResult result = new ResultPojo();
 		try {
-			UpdateResponse ur = server.deleteById(locator);
-			server.commit();
+			UpdateResponse ur = server.deleteById(locator, commits.getCommitWithin());
+			commits.updated(1);
 		} catch (Exception e) {
 			result.addErrorString(e.getMessage());
 		}
@@ -165,10 +232,9 @@ public class Solr4Client implements ISolrClient {
 					throw new Exception ("Solr4Client.addData fail: "+key+" "+o);
 			}
 			
-			UpdateResponse response = server.add(document);
+			UpdateResponse response = server.add(document, commits.getCommitWithin());
 			status = response.getStatus();
-			//TODO full commit or soft commit?
-			server.commit();
+			commits.updated(1);
 		} catch (Exception e) {
 			result.addErrorString(e.getMessage());
 		}
@@ -195,9 +261,38 @@ public class Solr4Client implements ISolrClient {
 		return null;
 	}
 	
+	@Override
+	public IResult realTimeGet(String locator) {
+		IResult result = new ResultPojo();
+		SolrQuery parameters = new SolrQuery();
+		parameters.setRequestHandler("/get");
+		parameters.set("id", locator);
+		try {
+			QueryResponse x = server.query(parameters);
+			result.setResultObject(x.getResponse().get("doc"));
+		} catch (Exception e) {
+			e.printStackTrace();
+			result.addErrorString(e.getMessage());
+		}
+		return result;
+	}
+
+	@Override
+	public boolean supportsJoin() {
+		//joins only see documents on the same shard
+		return false;
+	}
+
+	@Override
+	public IResult flush() {
+		return commits.flush();
+	}
+
 	@Override
 	public void shutDown() {
+		commits.shutDown();
 		server.shutdown();
+		pool.shutDown();
 	}
 
 	@Override
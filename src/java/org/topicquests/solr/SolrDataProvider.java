@@ -18,18 +18,37 @@ package org.topicquests.solr;
 import java.io.Writer;
 import java.util.*;
 import java.net.URLEncoder;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.topicquests.common.ResultPojo;
 import org.topicquests.common.api.IMergeRuleMethod;
 import org.topicquests.common.api.IResult;
 import org.topicquests.common.api.ITopicQuestsOntology;
+import org.topicquests.solr.api.IAsyncSolrClient;
+import org.topicquests.solr.api.IInvalidationBroadcaster;
+import org.topicquests.solr.api.IPartialUpdateMutator;
 import org.topicquests.solr.api.ISolrClient;
 import org.topicquests.solr.api.ISolrDataProvider;
+import org.topicquests.solr.api.ISolrResultStream;
+import org.topicquests.solr.api.IResponseIteratorHandler;
+import org.topicquests.solr.cache.FacetCache;
+import org.topicquests.solr.cache.HotLocatorTracker;
+import org.topicquests.solr.cache.QueryResultCache;
+import org.topicquests.solr.cache.SignatureBloomFilter;
+import org.topicquests.solr.cache.TupleAdjacencyIndex;
+import org.topicquests.solr.cache.WriteGeneration;
+import org.topicquests.solr.cache.WriteOverlay;
+import org.topicquests.solr.suggest.LabelSuggester;
+import org.topicquests.util.CompletedFuture;
 import org.topicquests.util.LoggingPlatform;
+import org.topicquests.util.MappedFuture;
 import org.topicquests.model.api.INodeModel;
 import org.topicquests.model.Node;
+import org.topicquests.model.api.IGraphQuery;
 import org.topicquests.model.api.IMergeImplementation;
+import org.topicquests.model.api.IMergeQueue;
 import org.topicquests.model.api.INode;
 import org.topicquests.model.api.ITuple;
 import org.topicquests.model.api.ITupleQuery;
@@ -47,30 +66,251 @@ import org.apache.solr.common.util.DateUtil;
  */
 public class SolrDataProvider implements ISolrDataProvider {
 	private LoggingPlatform log = LoggingPlatform.getInstance();
+	private SolrEnvironment environment;
 	private ISolrClient client;
+	private IAsyncSolrClient asyncClient;
 	private INodeModel _model;
 	private ITupleQuery tupleQuery;
+	private IGraphQuery graphQuery;
 	private SolrExporter exporter;
 	/** We only save public nodes in this cache */
 	private LRUCache nodeCache;
+	/** can be <code>null</code> */
+	private HotLocatorTracker hotLocators;
+	/** can be <code>null</code> */
+	private IInvalidationBroadcaster invalidator;
+	/** <code>null</code> if partial updates are not coalesced */
+	private UpdateCoalescer coalescer = null;
+	private boolean isOptimistic = false;
+	/** retries after a version conflict */
+	private int maxRetries = 5;
+	/** milliseconds; doubled on each retry, plus jitter */
+	private long retryBackoff = 20;
+	private Random random = new Random();
+	/** <code>null</code> unless <code>UseTupleIndex</code> is on */
+	private TupleAdjacencyIndex tupleIndex = null;
+	/** <code>null</code> unless <code>UseLabelSuggester</code> is on */
+	private LabelSuggester labelSuggester = null;
+	/** <code>null</code> if <code>TupleSignatureFilterSize</code> is 0 */
+	private SignatureBloomFilter signatureFilter = null;
+	/** <code>null</code> if <code>FacetCacheSize</code> is 0 */
+	private FacetCache facetCache = null;
+	/** <code>null</code> if <code>QueryCacheSize</code> is 0 */
+	private QueryResultCache queryCache = null;
+	/** moved on by every write; see {@link WriteGeneration} */
+	private WriteGeneration generation = new WriteGeneration();
+	/** <code>null</code> if <code>WriteOverlayHorizon</code> is 0 */
+	private WriteOverlay overlay = null;
+	/** locators per query in <code>getNodes</code> */
+	private static final int GET_NODES_BATCH = 100;
+	/** <code>labelgrams</code> and <code>detailsgrams</code> hold substrings of these lengths; see schema.xml */
+	private static final int MIN_GRAM = 2, MAX_GRAM = 15;
+	private boolean useGrams = false;
+	/** <code>getNode</code> and <code>getTuple</code> read by real-time get rather than search */
+	private boolean useRealTimeGet = true;
 	
 	/**
 	 * @param cacheSize
 	 * 
 	 */
 	public SolrDataProvider(SolrEnvironment e, int cacheSize) throws Exception {
+		environment = e;
 		client = e.getSolrClient();
+		hotLocators = e.getHotLocatorTracker();
+		invalidator = e.getInvalidationBroadcaster();
+		String pw = e.getStringProperty("PartialUpdateWindow");
+		if (pw != null && Long.parseLong(pw) > 0)
+			coalescer = new UpdateCoalescer(client, Long.parseLong(pw));
+		String oc = e.getStringProperty("UseOptimisticConcurrency");
+		isOptimistic = (oc != null && oc.equalsIgnoreCase("Yes"));
+		String rx = e.getStringProperty("PartialUpdateRetries");
+		if (rx != null)
+			maxRetries = Integer.parseInt(rx);
+		rx = e.getStringProperty("PartialUpdateBackoff");
+		if (rx != null)
+			retryBackoff = Long.parseLong(rx);
+		String rt = e.getStringProperty("UseRealTimeGet");
+		useRealTimeGet = (rt == null || !rt.equalsIgnoreCase("No"));
+
+		String at = e.getStringProperty("AsyncThreads");
+		asyncClient = new AsyncSolrClient(client, (at == null) ? 16 : Integer.parseInt(at));
 
 		exporter = new SolrExporter(this);
 		nodeCache = new LRUCache(cacheSize);
 		tupleQuery = new SolrTupleQuery(this);
+		String ti = e.getStringProperty("UseTupleIndex");
+		if (ti != null && ti.equalsIgnoreCase("Yes")) {
+			tupleIndex = new TupleAdjacencyIndex();
+			tupleQuery = new IndexedTupleQuery(this, tupleQuery, tupleIndex);
+		}
+		graphQuery = new SolrGraphQuery(this);
+		String ls = e.getStringProperty("UseLabelSuggester");
+		if (ls != null && ls.equalsIgnoreCase("Yes"))
+			labelSuggester = new LabelSuggester();
+		String sf = e.getStringProperty("TupleSignatureFilterSize");
+		int sfSize = (sf == null) ? 0 : Integer.parseInt(sf);
+		if (sfSize > 0)
+			signatureFilter = new SignatureBloomFilter(sfSize, 0.01);
+		String fc = e.getStringProperty("FacetCacheSize");
+		if (fc != null && Integer.parseInt(fc) > 0)
+			facetCache = new FacetCache(Integer.parseInt(fc), generation);
+		String qc = e.getStringProperty("QueryCacheSize");
+		if (qc != null && Integer.parseInt(qc) > 0)
+			queryCache = new QueryResultCache(Integer.parseInt(qc), generation);
+		String wh = e.getStringProperty("WriteOverlayHorizon");
+		long horizon = (wh == null) ? 3000 : Long.parseLong(wh);
+		String ws = e.getStringProperty("WriteOverlaySize");
+		if (horizon > 0)
+			overlay = new WriteOverlay(horizon, (ws == null) ? 10000 : Integer.parseInt(ws));
+		String ug = e.getStringProperty("UseLabelGrams");
+		useGrams = (ug != null && ug.equalsIgnoreCase("Yes"));
 		//default NO MERGE model
 		_model = new SolrNodeModel(this,null);
 	}
 	
+	/**
+	 * The client connects in a startup stage; anything which talks
+	 * to Solr waits here until that stage is done
+	 * @return
+	 */
+	ISolrClient client() {
+		environment.awaitSolrClient();
+		return client;
+	}
+	
 	@Override
 	public void removeFromCache(String nodeLocator) {
 		nodeCache.remove(nodeLocator);
+		generation.next();
+	}
+	
+	/**
+	 * After a write: evict locally, then tell peer processes
+	 * @param nodeLocator
+	 */
+	void invalidate(String nodeLocator) {
+		nodeCache.remove(nodeLocator);
+		if (invalidator != null)
+			invalidator.publish(nodeLocator);
+	}
+	
+	@Override
+	public void addToCache(INode node) {
+		if (!node.getIsPrivate() && !node.isPartial())
+			nodeCache.add(node.getLocator(), node);
+	}
+	
+	@Override
+	public TupleAdjacencyIndex getTupleIndex() {
+		return tupleIndex;
+	}
+	
+	@Override
+	public LabelSuggester getLabelSuggester() {
+		return labelSuggester;
+	}
+
+	@Override
+	public SignatureBloomFilter getSignatureFilter() {
+		return signatureFilter;
+	}
+	
+	@Override
+	public IResult flush() {
+		return client().flush();
+	}
+	
+	@Override
+	public IAsyncSolrClient getAsyncSolrClient() {
+		return asyncClient;
+	}
+	
+	/**
+	 * Keep the tuple index and label suggester current after a successful write
+	 * @param fields a whole document or a partial update
+	 * @param r
+	 * @param isPartial
+	 */
+	void indexWrite(Map<String,Object> fields, IResult r, boolean isPartial) {
+		generation.next();
+		if ((tupleIndex == null && labelSuggester == null && signatureFilter == null && overlay == null) || r.hasError())
+			return;
+		Object status = r.getResultObject();
+		if (status instanceof Integer && ((Integer)status).intValue() == ISolrClient.VERSION_CONFLICT)
+			return;
+		if (overlay != null) {
+			if (isPartial)
+				overlay.recordUpdate((String)fields.get(ITopicQuestsOntology.LOCATOR_PROPERTY));
+			else
+				overlay.recordWrite(fields);
+		}
+		if (tupleIndex != null) {
+			if (isPartial)
+				tupleIndex.applyUpdate(fields);
+			else if (fields.containsKey(ITopicQuestsOntology.TUPLE_SUBJECT_PROPERTY))
+				tupleIndex.addTuple(fields);
+		}
+		if (signatureFilter != null) {
+			Object sig = fields.get(ITopicQuestsOntology.TUPLE_SIGNATURE_PROPERTY);
+			if (sig instanceof Map)
+				sig = ((Map<String,Object>)sig).get("set");
+			if (sig instanceof String)
+				signatureFilter.add((String)sig);
+		}
+		if (labelSuggester != null) {
+			if (isPartial)
+				labelSuggester.applyUpdate(fields);
+			else
+				labelSuggester.index(fields, false);
+		}
+	}
+	
+	@Override
+	public IResult getNodes(List<String> locators, Set<String> credentials) {
+		IResult result = new ResultPojo();
+		Map<String,INode> found = new HashMap<String,INode>();
+		List<String> misses = new ArrayList<String>();
+		Iterator<String>itr = locators.iterator();
+		String lox;
+		INode n;
+		while (itr.hasNext()) {
+			lox = itr.next();
+			n = (INode)nodeCache.get(lox);
+			if (n != null)
+				found.put(lox, n); //only public nodes are cached
+			else
+				misses.add(lox);
+		}
+		int len = misses.size();
+		List<String> batch;
+		IResult r;
+		List<INode> nodes;
+		for (int i=0;i<len;i+=GET_NODES_BATCH) {
+			batch = misses.subList(i, Math.min(len, i+GET_NODES_BATCH));
+			r = fetch(QueryUtil.orQuery(ITopicQuestsOntology.LOCATOR_PROPERTY, batch), 0, batch.size(), FieldProjection.FULL, credentials);
+			if (r.hasError())
+				result.addErrorString(r.getErrorString());
+			nodes = (List<INode>)r.getResultObject();
+			if (nodes != null) {
+				mergeRecentWrites(null, 0, -1, nodes, credentials);
+				Iterator<INode>nitr = nodes.iterator();
+				while (nitr.hasNext()) {
+					n = nitr.next();
+					found.put(n.getLocator(), n);
+					if (overlay == null || !overlay.contains(n.getLocator()))
+						addToCache(n);
+				}
+			}
+		}
+		List<INode> l = new ArrayList<INode>();
+		itr = locators.iterator();
+		while (itr.hasNext()) {
+			n = found.get(itr.next());
+			if (n != null)
+				l.add(n);
+		}
+		result.setResultObject(l);
+		return result;
 	}
 	
 	/* (non-Javadoc)
@@ -102,28 +342,72 @@ public class SolrDataProvider implements ISolrDataProvider {
 	 */
 	public IResult getNode(String locator, Set<String> credentials) {
 		IResult result = null;
+		if (hotLocators != null)
+			hotLocators.recordAccess(locator);
 		INode n = (INode)nodeCache.get(locator);
 		if (n != null) {
 			result = new ResultPojo();
 			result.setResultObject(n);
-		} else {
-			result = runQuery(ITopicQuestsOntology.LOCATOR_PROPERTY+":"+locator,0,-1, credentials);
-			List<INode> l = (List<INode>)result.getResultObject();
-			System.out.println("SolrDataProvider.getNode "+locator+" "+l);
-			if (l != null && l.size() > 0) {
-				n = (INode)l.get(0);
-				if (!n.getIsPrivate()) {
-					//if it's public, return it and add to cache
-					result.setResultObject(n);
-					nodeCache.add(locator, n);
-				} else {
-					result.setResultObject(testNodeForCredentials(n,credentials)); //That's the result
-					if (result.getResultObject() == null)
-						result.addErrorString("Insufficient credentials for a private node");
+		} else
+			result = acceptFetched(locator, fetchByLocator(locator, credentials), credentials);
+		return result;
+	}
+	
+	@Override
+	public Future<IResult> getNodeAsync(final String locator, final Set<String> credentials) {
+		if (hotLocators != null)
+			hotLocators.recordAccess(locator);
+		INode n = (INode)nodeCache.get(locator);
+		if (n != null) {
+			IResult result = new ResultPojo();
+			result.setResultObject(n);
+			return new CompletedFuture<IResult>(result);
+		}
+		if (overlay != null && overlay.get(locator) != null) //no I/O
+			return new CompletedFuture<IResult>(acceptFetched(locator, fetchByLocator(locator, credentials), credentials));
+		if (!useRealTimeGet) {
+			return asyncClient.submit(new Callable<IResult>() {
+				@Override
+				public IResult call() {
+					return acceptFetched(locator, fetchByLocator(locator, credentials), credentials);
 				}
-			} else
-				result.setResultObject(null);
+			});
 		}
+		client(); //startup
+		return new MappedFuture<IResult,IResult>(asyncClient.realTimeGetAsync(locator)) {
+			@Override
+			protected IResult map(IResult r) {
+				IResult x = fromRealTimeGet(locator, r, credentials);
+				if (x == null)
+					x = searchByLocator(locator, credentials);
+				return acceptFetched(locator, x, credentials);
+			}
+		};
+	}
+	
+	/**
+	 * The rest of <code>getNode</code> after a cache miss: cache a public
+	 * node, check <code>credentials</code> against a private one
+	 * @param locator
+	 * @param result from {@link #fetchByLocator}
+	 * @param credentials
+	 * @return
+	 */
+	IResult acceptFetched(String locator, IResult result, Set<String> credentials) {
+		INode n = (INode)result.getResultObject();
+		System.out.println("SolrDataProvider.getNode "+locator+" "+n);
+		if (n != null) {
+			if (!n.getIsPrivate()) {
+				//if it's public, return it and add to cache
+				result.setResultObject(n);
+				nodeCache.add(locator, n);
+			} else {
+				result.setResultObject(testNodeForCredentials(n,credentials)); //That's the result
+				if (result.getResultObject() == null)
+					result.addErrorString("Insufficient credentials for a private node");
+			}
+		} else
+			result.setResultObject(null);
 		return result;
 	}
 	
@@ -132,7 +416,7 @@ public class SolrDataProvider implements ISolrDataProvider {
 			Set<String> credentials) {
 		String query = ITopicQuestsOntology.INSTANCE_OF_PROPERTY_TYPE+":"+ITopicQuestsOntology.MERGE_ASSERTION_TYPE+
 				" AND "+ITopicQuestsOntology.TUPLE_OBJECT_PROPERTY+":"+locator;
-		IResult r = client.runQuery(query, 0, -1);
+		IResult r = client().runQuery(query, 0, -1);
 log.logDebug("SolrDataProvider.getVirtualNodeIfExists "+query+" | "+r.getResultObject());
 		String lox = locator;
 		if (r.getResultObject() != null) {
@@ -177,12 +461,16 @@ log.logDebug("SolrDataProvider.getVirtualNodeIfExists-1 "+locator+" "+lox);			}
 	 * @see org.topicquests.model.api.IDataProvider#putNode(org.topicquests.model.api.INode)
 	 */
 	public IResult putNode(INode node) {
-		return client.addData(node.getProperties());
+		IResult result = client().addData(node.getProperties());
+		indexWrite(node.getProperties(), result, false);
+		return result;
 	}
 
 	@Override
 	public IResult putNodeNoMerge(INode node) {
-		return client.addDataNoMerge(node.getProperties());
+		IResult result = client().addDataNoMerge(node.getProperties());
+		indexWrite(node.getProperties(), result, false);
+		return result;
 	}
 
 	/**
@@ -234,8 +522,14 @@ log.logDebug("SolrDataProvider.getVirtualNodeIfExists-1 "+locator+" "+lox);			}
 	 */
 	public IResult listNodesByLabelAndType(String label, String typeLocator,
 			int start, int count, Set<String> credentials) {
+		return listNodesByLabelAndType(label, typeLocator, start, count, FieldProjection.FULL, credentials);
+	}
+
+	@Override
+	public IResult listNodesByLabelAndType(String label, String typeLocator,
+			int start, int count, String projection, Set<String> credentials) {
 		String query = ITopicQuestsOntology.LABEL_PROPERTY+":"+label+" AND "+ITopicQuestsOntology.INSTANCE_OF_PROPERTY_TYPE+":"+typeLocator;
-		IResult result = runQuery(query, start, count, credentials);
+		IResult result = runQuery(query, start, count, projection, credentials);
 		listNodes(result,credentials);
 		return result;
 	}
@@ -244,36 +538,81 @@ log.logDebug("SolrDataProvider.getVirtualNodeIfExists-1 "+locator+" "+lox);			}
 	 * @see org.topicquests.model.api.INodeModel#listNodesByLabel(java.lang.String, int, int)
 	 */
 	public IResult listNodesByLabel(String label, int start, int count, Set<String> credentials) {
+		return listNodesByLabel(label, start, count, FieldProjection.FULL, credentials);
+	}
+
+	@Override
+	public IResult listNodesByLabel(String label, int start, int count, String projection, Set<String> credentials) {
 		String query = ITopicQuestsOntology.LABEL_PROPERTY+":"+label;
-		IResult result = runQuery(query, start, count, credentials);
+		IResult result = runQuery(query, start, count, projection, credentials);
 		listNodes(result,credentials);
 		return result;
 	}
 	
 	public IResult listNodesByLabelLike(String labelFragment, int start, int count, Set<String> credentials) {
-		String query = ITopicQuestsOntology.LABEL_PROPERTY+":*"+labelFragment+"*";
-		IResult result = runQuery(query, start, count, credentials);
+		return listNodesByLabelLike(labelFragment, start, count, FieldProjection.FULL, credentials);
+	}
+
+	@Override
+	public IResult listNodesByLabelLike(String labelFragment, int start, int count, String projection, Set<String> credentials) {
+		String query = likeQuery(ITopicQuestsOntology.LABEL_PROPERTY, "labelgrams", labelFragment, true);
+		IResult result = runQuery(query, start, count, projection, credentials);
 		listNodes(result,credentials);
 		return result;
 	}
 	
 	public IResult listNodesByDetailsLike(String detailsFragment, int start, int count, Set<String> credentials) {
-		String query = ITopicQuestsOntology.DETAILS_PROPERTY+":*"+detailsFragment+"*";
-		IResult result = runQuery(query, start, count, credentials);
+		return listNodesByDetailsLike(detailsFragment, start, count, FieldProjection.FULL, credentials);
+	}
+
+	@Override
+	public IResult listNodesByDetailsLike(String detailsFragment, int start, int count, String projection, Set<String> credentials) {
+		//detailsgrams is per word
+		String query = likeQuery(ITopicQuestsOntology.DETAILS_PROPERTY, "detailsgrams", detailsFragment, false);
+		IResult result = runQuery(query, start, count, projection, credentials);
 		listNodes(result,credentials);
 		return result;
 	}
+	/**
+	 * <p>A substring query: a single term lookup in <code>gramField</code> if
+	 * <code>fragment</code> is within the n-gram lengths, else a
+	 * <code>*fragment*</code> wildcard on <code>field</code></p>
+	 * <p>Note that the n-gram lookup ignores case</p>
+	 * @param field
+	 * @param gramField
+	 * @param fragment
+	 * @param allowSpaces <code>false</code> if <code>gramField</code> is split on whitespace
+	 * @return
+	 */
+	String likeQuery(String field, String gramField, String fragment, boolean allowSpaces) {
+		int len = fragment.length();
+		if (useGrams && len >= MIN_GRAM && len <= MAX_GRAM &&
+				(allowSpaces || fragment.indexOf(' ') == -1))
+			return gramField+":"+QueryUtil.escapeQueryCulprits(fragment);
+		return field+":*"+fragment+"*";
+	}
+	
 	/* (non-Javadoc)
 	 * @see org.topicquests.model.api.INodeModel#listNodesByQuery(java.lang.String, int, int)
 	 */
 	public IResult listNodesByQuery(String queryString, int start, int count, Set<String> credentials) {
-		IResult result = runQuery(queryString, start, count, credentials);
+		return listNodesByQuery(queryString, start, count, FieldProjection.FULL, credentials);
+	}
+
+	@Override
+	public IResult listNodesByQuery(String queryString, int start, int count, String projection, Set<String> credentials) {
+		IResult result = runQuery(queryString, start, count, projection, credentials);
 		listNodes(result,credentials);
 		return result;
 	}
 	public IResult listNodesByCreatorId(String creatorId, int start, int count, Set<String> credentials) {
+		return listNodesByCreatorId(creatorId, start, count, FieldProjection.FULL, credentials);
+	}
+
+	@Override
+	public IResult listNodesByCreatorId(String creatorId, int start, int count, String projection, Set<String> credentials) {
 		String query = ITopicQuestsOntology.CREATOR_ID_PROPERTY+":"+creatorId;
-		IResult result = runQuery(query, start, count, credentials);
+		IResult result = runQuery(query, start, count, projection, credentials);
 		listNodes(result,credentials);
 		return result;
 	}
@@ -281,16 +620,26 @@ log.logDebug("SolrDataProvider.getVirtualNodeIfExists-1 "+locator+" "+lox);			}
 	 * @see org.topicquests.model.api.INodeModel#listNodesByType(java.lang.String, int, int)
 	 */
 	public IResult listNodesByType(String typeLocator, int start, int count, Set<String> credentials) {
+		return listNodesByType(typeLocator, start, count, FieldProjection.FULL, credentials);
+	}
+
+	@Override
+	public IResult listNodesByType(String typeLocator, int start, int count, String projection, Set<String> credentials) {
 		String query = ITopicQuestsOntology.INSTANCE_OF_PROPERTY_TYPE+":"+typeLocator;
-		IResult result = runQuery(query, start, count, credentials);
+		IResult result = runQuery(query, start, count, projection, credentials);
 		listNodes(result,credentials);
 		return result;
 	}
 
 	public IResult listInstanceNodes(String typeLocator, int start, int count, Set<String> credentials) {
+		return listInstanceNodes(typeLocator, start, count, FieldProjection.FULL, credentials);
+	}
+
+	@Override
+	public IResult listInstanceNodes(String typeLocator, int start, int count, String projection, Set<String> credentials) {
 		String query = ITopicQuestsOntology.INSTANCE_OF_PROPERTY_TYPE+":"+typeLocator;
 		System.out.println("LISTINSTANCES- "+query);
-		IResult result = runQuery(query, start, count, credentials);
+		IResult result = runQuery(query, start, count, projection, credentials);
 		System.out.println("LISTINSTANCES-1 "+result.hasError()+" "+result.getResultObject());
 		
 		listNodes(result,credentials);
@@ -318,8 +667,14 @@ log.logDebug("SolrDataProvider.getVirtualNodeIfExists-1 "+locator+" "+lox);			}
 
 	public IResult listSubclassNodes(String superclassLocator, int start,
 			int count, Set<String> credentials) {
+		return listSubclassNodes(superclassLocator, start, count, FieldProjection.FULL, credentials);
+	}
+
+	@Override
+	public IResult listSubclassNodes(String superclassLocator, int start,
+			int count, String projection, Set<String> credentials) {
 		String query = ITopicQuestsOntology.SUBCLASS_OF_PROPERTY_TYPE+":"+superclassLocator;
-		IResult result = runQuery(query, start, count, credentials);
+		IResult result = runQuery(query, start, count, projection, credentials);
 		listNodes(result,credentials);
 		return result;
 	}
@@ -328,8 +683,13 @@ log.logDebug("SolrDataProvider.getVirtualNodeIfExists-1 "+locator+" "+lox);			}
 	 * @see org.topicquests.model.api.INodeModel#getNodeByPSI(java.lang.String)
 	 */
 	public IResult listNodesByPSI(String psi, int start, int count, Set<String> credentials) {
+		return listNodesByPSI(psi, start, count, FieldProjection.FULL, credentials);
+	}
+
+	@Override
+	public IResult listNodesByPSI(String psi, int start, int count, String projection, Set<String> credentials) {
 		String query = ITopicQuestsOntology.PSI_PROPERTY_TYPE+":"+psi;
-		IResult result = runQuery(query, start, count, credentials);
+		IResult result = runQuery(query, start, count, projection, credentials);
 		listNodes(result,credentials);
 		return result;
 	}
@@ -338,20 +698,74 @@ log.logDebug("SolrDataProvider.getVirtualNodeIfExists-1 "+locator+" "+lox);			}
 	 * @see org.topicquests.model.api.IDataProvider#putTuple(org.topicquests.model.api.ITuple)
 	 */
 	public IResult putTuple(ITuple tuple) {
-		return client.addData(tuple.getProperties());
+		IResult result = client().addData(tuple.getProperties());
+		indexWrite(tuple.getProperties(), result, false);
+		return result;
 	}
 
 	/* (non-Javadoc)
 	 * @see org.topicquests.model.api.IDataProvider#getTuple(java.lang.String)
 	 */
 	public IResult getTuple(String tupleLocator, Set<String> credentials) {
-		IResult result = runQuery(ITopicQuestsOntology.LOCATOR_PROPERTY+":"+tupleLocator, 0,-1, credentials);
-		List<INode> l = (List<INode>)result.getResultObject();
-		if (l != null && l.size() > 0) {
-			ITuple n = (ITuple)l.get(0);	
-			result.setResultObject(n);
-		} else
-			result.setResultObject(null);
+		return fetchByLocator(tupleLocator, credentials);
+	}
+
+	/**
+	 * Fetch one node or tuple by its key. With <code>UseRealTimeGet</code> this is
+	 * a <code>/get</code> lookup, which sees writes not yet committed; if that
+	 * fails, or it is turned off, a <code>locator</code> search
+	 * @param locator
+	 * @param credentials
+	 * @return the {@link INode}, or <code>null</code> if there is none or
+	 *  <code>credentials</code> do not allow it
+	 */
+	IResult fetchByLocator(String locator, Set<String> credentials) {
+		IResult result = new ResultPojo();
+		Map<String,Object> recent = (overlay == null) ? null : overlay.get(locator);
+		if (recent != null) {
+			if (isSafe(recent, credentials)) {
+				unescapeQueryCulprits(recent);
+				result.setResultObject(new Node(recent));
+			}
+			return result;
+		}
+		if (useRealTimeGet) {
+			IResult r = fromRealTimeGet(locator, client().realTimeGet(locator), credentials);
+			if (r != null)
+				return r;
+		}
+		return searchByLocator(locator, credentials);
+	}
+	
+	/**
+	 * @param locator
+	 * @param r the real-time get response
+	 * @param credentials
+	 * @return as {@link #fetchByLocator}, or <code>null</code> if the get failed
+	 */
+	IResult fromRealTimeGet(String locator, IResult r, Set<String> credentials) {
+		if (r.hasError()) {
+			log.logError("SolrDataProvider.fetchByLocator real-time get failed "+locator+" "+r.getErrorString(), null);
+			return null;
+		}
+		IResult result = new ResultPojo();
+		Map<String,Object> doc = (Map<String,Object>)r.getResultObject();
+		if (doc != null && isSafe(doc, credentials)) {
+			unescapeQueryCulprits(doc);
+			result.setResultObject(new Node(doc));
+		}
+		return result;
+	}
+	
+	IResult searchByLocator(String locator, Set<String> credentials) {
+		IResult result = new ResultPojo();
+		//the client may hedge this lookup across read replicas
+		IResult r = convertFetched(client().getByProxyLocator(locator, 0, -1), FieldProjection.FULL, credentials);
+		if (r.hasError())
+			result.addErrorString(r.getErrorString());
+		List<INode> l = (List<INode>)r.getResultObject();
+		if (l != null && l.size() > 0)
+			result.setResultObject(l.get(0));
 		return result;
 	}
 
@@ -407,9 +821,178 @@ log.logDebug("SolrDataProvider.getVirtualNodeIfExists-1 "+locator+" "+lox);			}
 	}
 
 	public IResult runQuery(String queryString, int start, int count, Set<String> credentials) {
+		return runQuery(queryString, start, count, FieldProjection.FULL, credentials);
+	}
+
+	@Override
+	public IResult runQuery(String queryString, int start, int count, String projection, Set<String> credentials) {
 		System.out.println("SolrDataProvider.runQuery "+queryString);
-		IResult result = client.runQuery(queryString, start, count);
-		result = convertResultsWithFilter(result,credentials);
+		boolean useCache = (queryCache != null && FieldProjection.isFull(projection));
+		String key = null;
+		long gen = generation.get();
+		if (useCache) {
+			key = QueryResultCache.makeKey(queryString, start, count, credentials);
+			List<String> lox = queryCache.get(key);
+			if (lox != null)
+				return getNodes(lox, credentials);
+		}
+		IResult result = fetch(queryString, start, count, projection, credentials);
+		return completeQuery(queryString, start, count, projection, credentials, result, key, gen);
+	}
+
+	@Override
+	public Future<IResult> runQueryAsync(String queryString, int start, int count, Set<String> credentials) {
+		return runQueryAsync(queryString, start, count, FieldProjection.FULL, credentials);
+	}
+
+	@Override
+	public Future<IResult> runQueryAsync(final String queryString, final int start, final int count,
+			final String projection, final Set<String> credentials) {
+		boolean useCache = (queryCache != null && FieldProjection.isFull(projection));
+		final String key = useCache ? QueryResultCache.makeKey(queryString, start, count, credentials) : null;
+		final long gen = generation.get();
+		if (useCache) {
+			final List<String> lox = queryCache.get(key);
+			if (lox != null) {
+				return asyncClient.submit(new Callable<IResult>() {
+					@Override
+					public IResult call() {
+						return getNodes(lox, credentials);
+					}
+				});
+			}
+		}
+		client(); //startup
+		Future<IResult> f = asyncClient.runQueryAsync(queryString, start, count, FieldProjection.fields(projection));
+		return new MappedFuture<IResult,IResult>(f) {
+			@Override
+			protected IResult map(IResult x) {
+				IResult result = convertFetched(x, projection, credentials);
+				return completeQuery(queryString, start, count, projection, credentials, result, key, gen);
+			}
+		};
+	}
+
+	@Override
+	public ISolrResultStream streamQuery(String queryString, int pageSize, String projection,
+			Set<String> credentials, boolean byDocument, IResponseIteratorHandler handler) {
+		SolrResultStream result = new SolrResultStream(this, asyncClient, queryString, pageSize,
+				projection, credentials, byDocument, handler);
+		result.start();
+		return result;
+	}
+
+	/**
+	 * The rest of <code>runQuery</code> once the page is fetched
+	 * @param queryString
+	 * @param start
+	 * @param count
+	 * @param projection
+	 * @param credentials
+	 * @param result from {@link #fetch}
+	 * @param key the query cache key, <code>null</code> if not cached
+	 * @param gen the write generation before the query was sent
+	 * @return <code>result</code>
+	 */
+	IResult completeQuery(String queryString, int start, int count, String projection,
+			Set<String> credentials, IResult result, String key, long gen) {
+		List<INode> l = (List<INode>)result.getResultObject();
+		if (FieldProjection.isFull(projection))
+			mergeRecentWrites(queryString, start, count, l, credentials);
+		//while writes may be unsearchable, neither the page nor its nodes are cached
+		if (key != null && !result.hasError() && (overlay == null || overlay.isSettled())) {
+			List<String> lox = new ArrayList<String>(l.size());
+			INode n;
+			for (int i=0;i<l.size();i++) {
+				n = l.get(i);
+				lox.add(n.getLocator());
+				//so that a later hit can be resolved without a query
+				addToCache(n);
+			}
+			queryCache.put(key, gen, lox);
+		}
+		return result;
+	}
+
+	/**
+	 * Bring a page of full results up to date with this process's writes which
+	 * Solr may not yet have made searchable: documents on the page are replaced
+	 * by what was last written, and on the first page, written documents which
+	 * match are added, if <code>queryString</code> is a plain conjunction of
+	 * <code>field:value</code> terms and the page has room
+	 * @param queryString <code>null</code> means replace only
+	 * @param start
+	 * @param count
+	 * @param page
+	 * @param credentials
+	 */
+	void mergeRecentWrites(String queryString, int start, int count, List<INode> page, Set<String> credentials) {
+		if (overlay == null || overlay.isSettled())
+			return;
+		//partial updates: fetch what they made; a document fetched before a
+		//later update to it is not kept
+		Iterator<Map.Entry<String,Long>>pitr = overlay.listPending().entrySet().iterator();
+		Map.Entry<String,Long> pending;
+		String lox;
+		IResult r;
+		while (pitr.hasNext()) {
+			pending = pitr.next();
+			lox = pending.getKey();
+			r = client().realTimeGet(lox);
+			//no /get handler: forget it rather than ask again on every query
+			overlay.resolve(lox, pending.getValue().longValue(),
+					r.hasError() ? null : (Map<String,Object>)r.getResultObject());
+		}
+		Set<String> onPage = new HashSet<String>();
+		Map<String,Object> doc;
+		for (int i=0;i<page.size();i++) {
+			lox = page.get(i).getLocator();
+			onPage.add(lox);
+			doc = overlay.get(lox);
+			if (doc != null && isSafe(doc, credentials)) {
+				unescapeQueryCulprits(doc);
+				page.set(i, new Node(doc));
+			}
+		}
+		if (queryString == null || start > 0)
+			return;
+		List<String[]> terms = WriteOverlay.parseTerms(queryString);
+		if (terms == null)
+			return;
+		Iterator<Map<String,Object>>ditr = overlay.listDocuments().iterator();
+		while (ditr.hasNext() && (count < 0 || page.size() < count)) {
+			doc = ditr.next();
+			//as stored, like a search hit; the terms are unescaped
+			unescapeQueryCulprits(doc);
+			lox = (String)doc.get(ITopicQuestsOntology.LOCATOR_PROPERTY);
+			if (!onPage.contains(lox) && WriteOverlay.matches(doc, terms) && isSafe(doc, credentials))
+				page.add(new Node(doc));
+		}
+	}
+
+	/**
+	 * <code>runQuery</code> without the query result cache
+	 */
+	IResult fetch(String queryString, int start, int count, String projection, Set<String> credentials) {
+		return convertFetched(client().runQuery(queryString, start, count, FieldProjection.fields(projection)), projection, credentials);
+	}
+
+	/**
+	 * Client query response to nodes which pass <code>credentials</code>
+	 * @param x
+	 * @param projection
+	 * @param credentials
+	 * @return
+	 */
+	IResult convertFetched(IResult x, String projection, Set<String> credentials) {
+		IResult result = convertResultsWithFilter(x,credentials);
+		if (x.hasError())
+			result.addErrorString(x.getErrorString());
+		if (!FieldProjection.isFull(projection)) {
+			List<INode> l = (List<INode>)result.getResultObject();
+			for (int i=0;i<l.size();i++)
+				l.get(i).setIsPartial(true);
+		}
 		return result;
 	}
 
@@ -506,7 +1089,9 @@ log.logDebug("SolrDataProvider.getVirtualNodeIfExists-1 "+locator+" "+lox);			}
 	}
 	
 	/**
-	 * Will always return false if private node and <code>credentials = null</code>
+	 * Will always return false if private node and <code>credentials = null</code>;
+	 * a private node with restrictions is safe if <code>credentials</code> include
+	 * any of them
 	 * @param node
 	 * @param credentials
 	 * @return
@@ -527,7 +1112,7 @@ log.logDebug("SolrDataProvider.getVirtualNodeIfExists-1 "+locator+" "+lox);			}
 			} else {
 				List<String>acls = (List<String>)o;
 				Collection<String> x = CollectionUtils.intersection(credentials, acls);
-				return x.isEmpty();
+				return !x.isEmpty();
 			}
 		}
 		return true; // default
@@ -612,7 +1197,20 @@ log.logDebug("SolrDataProvider.getVirtualNodeIfExists-1 "+locator+" "+lox);			}
 
 	@Override
 	public IResult exportXmlFile(Writer out, Set<String> credentials) {
-		return exporter.exportXmlFile(out, credentials);
+		IResult result = null;
+		try {
+			out.write("<"+IXMLFields.DATABASE+">\n");
+			result = exporter.exportXmlFile(out, credentials);
+			out.write("</"+IXMLFields.DATABASE+">\n");
+			out.flush();
+			out.close();
+		} catch (Exception e) {
+			if (result == null)
+				result = new ResultPojo();
+			result.addErrorString(e.getMessage());
+			log.logError(e.getMessage(),e);
+		}
+		return result;
 	}
 
 
@@ -635,8 +1233,16 @@ log.logDebug("SolrDataProvider.getVirtualNodeIfExists-1 "+locator+" "+lox);			}
 
 	@Override
 	public IResult updateNode(INode node) {
+		if (node.isPartial()) {
+			IResult result = new ResultPojo();
+			result.addErrorString("SolrDataProvider.updateNode cannot update from a partial node "+node.getLocator());
+			return result;
+		}
 		this.removeFromCache(node.getLocator());
-		return client.updateData(node.getProperties());
+		IResult result = client().updateData(node.getProperties());
+		indexWrite(node.getProperties(), result, false);
+		invalidate(node.getLocator());
+		return result;
 	}
 
 
@@ -649,16 +1255,82 @@ log.logDebug("SolrDataProvider.getVirtualNodeIfExists-1 "+locator+" "+lox);			}
 			return result;
 		} else {
 			this.removeFromCache(lox);
-			return client.partialUpdateData(fields);
+			IResult result;
+			if (coalescer != null) {
+				client(); // wait for the client
+				result = coalescer.submit(fields);
+			} else
+				result = client().partialUpdateData(fields);
+			indexWrite(fields, result, true);
+			invalidate(lox);
+			return result;
 		}
 		
 	}
 
+	@Override
+	public boolean useOptimisticConcurrency() {
+		return isOptimistic;
+	}
+
+	@Override
+	public IResult partialUpdateData(String locator, IPartialUpdateMutator mutator) {
+		IResult result = null;
+		IResult r;
+		Map<String,Object> current;
+		Map<String,Object> update;
+		Object version;
+		Object status;
+		this.removeFromCache(locator);
+		for (int attempt=0;attempt<=maxRetries;attempt++) {
+			r = client().realTimeGet(locator);
+			if (r.hasError())
+				return r;
+			current = (Map<String,Object>)r.getResultObject();
+			update = mutator.mutate(current);
+			if (update == null) {
+				result = new ResultPojo();
+				break;
+			}
+			update.put(ITopicQuestsOntology.LOCATOR_PROPERTY, locator);
+			if (isOptimistic) {
+				//version -1 means the document must not exist yet
+				version = (current == null) ? new Long(-1) : current.get(ITopicQuestsOntology.SOLR_VERSION_PROPERTY_TYPE);
+				if (version != null)
+					update.put(ITopicQuestsOntology.SOLR_VERSION_PROPERTY_TYPE, version);
+			}
+			//versioned updates are never coalesced
+			result = client().partialUpdateData(update);
+			indexWrite(update, result, true);
+			status = result.getResultObject();
+			if (!isOptimistic || !(status instanceof Integer) ||
+					((Integer)status).intValue() != ISolrClient.VERSION_CONFLICT)
+				break;
+			log.logDebug("SolrDataProvider.partialUpdateData conflict "+locator+" "+attempt);
+			if (attempt < maxRetries) {
+				try {
+					long wait = retryBackoff << attempt;
+					Thread.sleep(wait + (long)(random.nextDouble()*wait));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		invalidate(locator);
+		return result;
+	}
+
 	@Override
 	public ITupleQuery getTupleQuery() {
 		return tupleQuery;
 	}
 
+	@Override
+	public IGraphQuery getGraphQuery() {
+		return graphQuery;
+	}
+
 	@Override
 	public IResult createMergeRule(IMergeRuleMethod theMethod) {
 		IResult result = new ResultPojo();
@@ -669,14 +1341,72 @@ log.logDebug("SolrDataProvider.getVirtualNodeIfExists-1 "+locator+" "+lox);			}
 	@Override
 	public IResult existsTupleBySubjectOrObjectAndRelation(String theLocator,
 			String relationLocator) {
-		IResult result = new ResultPojo();
-		// TODO Auto-generated method stub
+		String lox = QueryUtil.escapeQueryCulprits(theLocator);
+		String query = "("+ITopicQuestsOntology.TUPLE_SUBJECT_PROPERTY+":"+lox+" OR "+
+				ITopicQuestsOntology.TUPLE_OBJECT_PROPERTY+":"+lox+") AND "+
+				ITopicQuestsOntology.INSTANCE_OF_PROPERTY_TYPE+":"+QueryUtil.escapeQueryCulprits(relationLocator);
+		//no credentials here: any such tuple, private or not
+		return toExists(client().count(query, null));
+	}
+
+	@Override
+	public IResult existsTupleBySignature(String signature, Set<String> credentials) {
+		if (signatureFilter != null && !signatureFilter.mightContain(signature)) {
+			IResult result = new ResultPojo();
+			result.setResultObject(Boolean.FALSE);
+			return result;
+		}
+		return exists(ITopicQuestsOntology.TUPLE_SIGNATURE_PROPERTY+":"+QueryUtil.escapeQueryCulprits(signature), credentials);
+	}
+
+	@Override
+	public IResult count(String queryString, Set<String> credentials) {
+		return client().count(queryString, QueryUtil.credentialFilter(credentials));
+	}
+
+	@Override
+	public IResult exists(String queryString, Set<String> credentials) {
+		return toExists(count(queryString, credentials));
+	}
+
+	@Override
+	public IResult facetCounts(String queryString, String field, int limit, Set<String> credentials) {
+		String key = null;
+		long gen = 0;
+		if (facetCache != null) {
+			key = FacetCache.makeKey(queryString+"|"+field+"|"+limit, credentials);
+			gen = generation.get();
+			Map<String,Long> counts = facetCache.get(key);
+			if (counts != null) {
+				IResult result = new ResultPojo();
+				result.setResultObject(counts);
+				return result;
+			}
+		}
+		IResult result = client().facet(queryString, QueryUtil.credentialFilter(credentials), field, limit, 1);
+		if (facetCache != null && !result.hasError())
+			facetCache.put(key, gen, (Map<String,Long>)result.getResultObject());
 		return result;
 	}
 
+	/**
+	 * @param countResult
+	 * @return a Boolean, <code>false</code> on error
+	 */
+	IResult toExists(IResult countResult) {
+		Long n = (Long)countResult.getResultObject();
+		countResult.setResultObject(new Boolean(n != null && n.longValue() > 0));
+		return countResult;
+	}
+
 	@Override
 	public void setMergeBean(IMergeImplementation merger) {
-		_model = new SolrNodeModel(this,merger);
+		setMergeBean(merger, null);
+	}
+
+	@Override
+	public void setMergeBean(IMergeImplementation merger, IMergeQueue queue) {
+		_model = new SolrNodeModel(this,merger,queue);
 	}
 
 	@Override
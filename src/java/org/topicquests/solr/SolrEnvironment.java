@@ -15,22 +15,49 @@
  */
 package org.topicquests.solr;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import org.nex.config.ConfigPullParser;
+import org.topicquests.common.ResultPojo;
 import org.topicquests.common.api.IConsoleDisplay;
+import org.topicquests.common.api.IResult;
 import org.topicquests.model.BiblioBootstrap;
 import org.topicquests.model.CoreBootstrap;
 import org.topicquests.model.RelationsBootstrap;
 import org.topicquests.model.api.IMergeImplementation;
+import org.topicquests.model.api.IMergeQueue;
+import org.topicquests.solr.api.IInvalidationBroadcaster;
+import org.topicquests.solr.api.IInvalidationListener;
 import org.topicquests.solr.api.ISolrClient;
 import org.topicquests.solr.api.ISolrDataProvider;
 import org.topicquests.solr.api.ISolrModel;
 import org.topicquests.solr.api.ISolrQueryIterator;
+import org.topicquests.solr.cache.CacheWarmer;
+import org.topicquests.solr.cache.SignatureBloomFilter;
+import org.topicquests.solr.cache.TupleAdjacencyIndex;
+import org.topicquests.solr.suggest.LabelSuggester;
+import org.topicquests.solr.cache.HotLocatorTracker;
+import org.topicquests.solr.cache.LoopbackInvalidationBroadcaster;
+import org.topicquests.solr.merge.MergeQueue;
 import org.topicquests.util.LoggingPlatform;
 import org.topicquests.util.Tracer;
 
 /**
- * 
+ * <p>Startup is staged: the constructors (through <code>init</code>) only build
+ * the pieces; <code>start()</code> then runs the client connection and merge
+ * implementation concurrently, and the bootstrap check once both are done, so
+ * that bootstrap writes through the model with its merge bean. Registered startup tasks,
+ * such as cache warm-up and the in-memory indexes, run in the background once
+ * the client is connected; <code>start()</code> does not wait for them, and
+ * each index leaves its queries to Solr until it is ready.</p>
+ * <p>Cached reads can be served as soon as the data provider exists; anything
+ * which must talk to Solr waits until the client connection stage is done.</p>
  * @author park
  *
  */
@@ -41,53 +68,347 @@ public class SolrEnvironment {
 	private ISolrDataProvider database;
 	private ISolrModel model;
 	private IConsoleDisplay host;
+	private IMergeImplementation merger = null;
+	/** set on a startup thread */
+	private volatile IMergeQueue mergeQueue = null;
+	private HotLocatorTracker hotLocators = null;
+	private IInvalidationBroadcaster invalidator = null;
+	/** tasks which run once the client is connected, e.g. cache warm-up */
+	private List<Callable<IResult>> startupTasks = new ArrayList<Callable<IResult>>();
+	private ExecutorService startupExecutor = null;
+	private Future<IResult> startup = null;
+	/** the startup tasks, which <code>start()</code> does not wait for */
+	private volatile FutureTask<IResult> startupTasksDone = null;
+	/** released when the client connection stage finishes, success or not */
+	private CountDownLatch clientLatch = new CountDownLatch(1);
+	/** set on a startup thread */
+	private volatile boolean clientIsConnected = false;
 
 	/**
+	 * Blocks until startup is complete
 	 * @param p
 	 */
 	public SolrEnvironment(Hashtable<String,Object>p) {
-		init(p);
+		this(p, true);
 	}
 	
+	/**
+	 * @param p
+	 * @param startNow if <code>false</code>, caller is expected to call <code>start()</code>;
+	 *  otherwise, this blocks until startup is complete
+	 */
+	public SolrEnvironment(Hashtable<String,Object>p, boolean startNow) {
+		init(p);
+		if (startNow)
+			waitForStartup();
+	}
+
 	public SolrEnvironment() {
 		ConfigPullParser p = new ConfigPullParser("config-props.xml");
 		init(p.getProperties());
+		waitForStartup();
 	}
 	
+	/**
+	 * Construct the pieces; nothing here talks to Solr
+	 * @param p
+	 */
 	void init(Hashtable<String,Object>p) {
 		props = p;
 		try {
 			String ccp = getStringProperty("SolrClient");
 			Class o = Class.forName(ccp);
 			solr = (ISolrClient)o.newInstance();
-			solr.init(getStringProperty("SolrURL"));
-//			solr = new Solr3Client(getStringProperty("SolrURL")); //TODO Solr4Client for testing
-			record("Solr4Client started");
+			solr.setConfiguration(props);
 			System.out.println("AAAA "+getStringProperty("MapCacheSize"));
 			int cachesize = Integer.parseInt(getStringProperty("MapCacheSize"));
+			hotLocators = new HotLocatorTracker(this);
+			String ib = getStringProperty("InvalidationBroadcaster");
+			if (ib != null) {
+				o = Class.forName(ib);
+				invalidator = (IInvalidationBroadcaster)o.newInstance();
+			} else
+				invalidator = new LoopbackInvalidationBroadcaster();
+			invalidator.init(this);
 			database = new SolrDataProvider(this,cachesize );
-			IMergeImplementation merger;
+			invalidator.addListener(new IInvalidationListener() {
+				@Override
+				public void invalidate(String locator) {
+					database.removeFromCache(locator);
+				}
+			});
 			String cp = (String)props.get("MergeImplementation");
 			//this installation might not deal with merge bean
 			if (cp != null) {
 				o = Class.forName(cp);
 				merger = (IMergeImplementation)o.newInstance();
-				merger.init(this);
-				database.setMergeBean(merger);
 			}
 			model = new SolrModel(this);
+			String wu = getStringProperty("CacheWarmUp");
+			if (wu != null && wu.equalsIgnoreCase("Yes"))
+				addStartupTask(new CacheWarmer(this, hotLocators));
+			final TupleAdjacencyIndex tupleIndex = database.getTupleIndex();
+			if (tupleIndex != null) {
+				addStartupTask(new Callable<IResult>() {
+					@Override
+					public IResult call() throws Exception {
+						return tupleIndex.build(solr);
+					}
+				});
+				//tuples changed or deleted by peers
+				invalidator.addListener(new IInvalidationListener() {
+					@Override
+					public void invalidate(final String locator) {
+						if (tupleIndex.isReady() && tupleIndex.containsTuple(locator)) {
+							database.getAsyncSolrClient().submit(new Callable<IResult>() {
+								@Override
+								public IResult call() throws Exception {
+									return tupleIndex.refresh(solr, locator);
+								}
+							});
+						}
+					}
+				});
+			}
+			final LabelSuggester labelSuggester = database.getLabelSuggester();
+			if (labelSuggester != null) {
+				addStartupTask(new Callable<IResult>() {
+					@Override
+					public IResult call() throws Exception {
+						return labelSuggester.build(solr);
+					}
+				});
+			}
+			final SignatureBloomFilter signatureFilter = database.getSignatureFilter();
+			if (signatureFilter != null) {
+				addStartupTask(new Callable<IResult>() {
+					@Override
+					public IResult call() throws Exception {
+						return signatureFilter.build(solr);
+					}
+				});
+			}
+		} catch (Exception e) {
+			logError(e.getMessage(),e);
+			e.printStackTrace();
+		}
+		logDebug("Initialized");
+	}
+	
+	/**
+	 * Add a task to be run in the background after the client is connected.
+	 * Must be called before <code>start()</code>
+	 * @param task
+	 */
+	public void addStartupTask(Callable<IResult> task) {
+		synchronized(startupTasks) {
+			startupTasks.add(task);
+		}
+	}
+	
+	/**
+	 * Start the environment; calling more than once returns the same future.
+	 * The returned {@link IResult} carries all errors from all stages, and
+	 * a <code>Boolean</code> result object which is <code>true</code> if there were none
+	 * @return
+	 */
+	public synchronized Future<IResult> start() {
+		if (startup != null)
+			return startup;
+		int threads = 4;
+		String tc = getStringProperty("StartupThreads");
+		if (tc != null)
+			threads = Integer.parseInt(tc);
+		startupExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count = 0;
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "SolrEnvironment-startup-"+(++count));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		FutureTask<IResult> task = new FutureTask<IResult>(new Callable<IResult>() {
+			@Override
+			public IResult call() throws Exception {
+				return runStartup();
+			}
+		});
+		startup = task;
+		Thread t = new Thread(task, "SolrEnvironment-startup");
+		t.setDaemon(true);
+		t.start();
+		return startup;
+	}
+	
+	/**
+	 * Runs on the startup thread; the stages themselves run on <code>startupExecutor</code>
+	 * @return
+	 */
+	IResult runStartup() {
+		long startTime = System.currentTimeMillis();
+		IResult result = new ResultPojo();
+		List<Future<IResult>> stages = new ArrayList<Future<IResult>>();
+		Future<IResult> connect = startupExecutor.submit(new Callable<IResult>() {
+			@Override
+			public IResult call() throws Exception {
+				IResult r = new ResultPojo();
+				try {
+					solr.init(getStringProperty("SolrURL"));
+					clientIsConnected = true;
+					record("SolrClient started");
+				} catch (Exception e) {
+					logError(e.getMessage(),e);
+					r.addErrorString(e.getMessage());
+				} finally {
+					clientLatch.countDown();
+				}
+				return r;
+			}
+		});
+		stages.add(connect);
+		//only connect and merge init run side by side
+		Future<IResult> merging = null;
+		if (merger != null) {
+			merging = startupExecutor.submit(new Callable<IResult>() {
+				@Override
+				public IResult call() throws Exception {
+					IResult r = new ResultPojo();
+					try {
+						merger.init(SolrEnvironment.this);
+						mergeQueue = new MergeQueue(SolrEnvironment.this, merger);
+						database.setMergeBean(merger, mergeQueue);
+					} catch (Exception e) {
+						logError(e.getMessage(),e);
+						r.addErrorString(e.getMessage());
+					}
+					return r;
+				}
+			});
+			stages.add(merging);
+		}
+		//everything else needs the client
+		collect(connect, result);
+		//bootstrap writes through the model which setMergeBean replaces
+		if (merging != null)
+			collect(merging, result);
+		if (clientIsConnected) {
 			String bs = (String)props.get("ShouldBootstrap");
 			boolean shouldBootstrap = false; // default value
 			if (bs != null)
 				shouldBootstrap = bs.equalsIgnoreCase("Yes");
-			if (shouldBootstrap)
-				bootstrap();
+			if (shouldBootstrap) {
+				stages.add(startupExecutor.submit(new Callable<IResult>() {
+					@Override
+					public IResult call() throws Exception {
+						IResult r = new ResultPojo();
+						try {
+							bootstrap();
+						} catch (Exception e) {
+							logError(e.getMessage(),e);
+							r.addErrorString(e.getMessage());
+						}
+						return r;
+					}
+				}));
+			}
+		}
+		final List<Future<IResult>> background = new ArrayList<Future<IResult>>();
+		if (clientIsConnected) {
+			synchronized(startupTasks) {
+				Iterator<Callable<IResult>>itr = startupTasks.iterator();
+				while (itr.hasNext())
+					background.add(startupExecutor.submit(itr.next()));
+			}
+		}
+		//the executor is shut down once the background tasks are done
+		startupTasksDone = new FutureTask<IResult>(new Callable<IResult>() {
+			@Override
+			public IResult call() throws Exception {
+				long t = System.currentTimeMillis();
+				IResult r = new ResultPojo();
+				Iterator<Future<IResult>>itr = background.iterator();
+				while (itr.hasNext())
+					collect(itr.next(), r);
+				startupExecutor.shutdown();
+				record("SolrEnvironment startup tasks done in "+(System.currentTimeMillis()-t)+" ms "+r.hasError());
+				return r;
+			}
+		});
+		Thread t = new Thread(startupTasksDone, "SolrEnvironment-startup-tasks");
+		t.setDaemon(true);
+		t.start();
+		Iterator<Future<IResult>>itr = stages.iterator();
+		Future<IResult> f;
+		while (itr.hasNext()) {
+			f = itr.next();
+			if (f != connect && f != merging)
+				collect(f, result);
+		}
+		result.setResultObject(new Boolean(!result.hasError()));
+		record("SolrEnvironment started in "+(System.currentTimeMillis()-startTime)+" ms "+result.hasError());
+		logDebug("Started");
+		return result;
+	}
+	
+	void collect(Future<IResult> f, IResult result) {
+		try {
+			IResult r = f.get();
+			if (r != null && r.hasError())
+				result.addErrorString(r.getErrorString());
+		} catch (Exception e) {
+			logError(e.getMessage(),e);
+			result.addErrorString(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Start if needed and block until startup is complete
+	 * @return
+	 */
+	public IResult waitForStartup() {
+		IResult result = null;
+		try {
+			result = start().get();
 		} catch (Exception e) {
 			logError(e.getMessage(),e);
 			e.printStackTrace();
+			result = new ResultPojo();
+			result.addErrorString(e.getMessage());
 		}
-		logDebug("Started");
+		return result;
+	}
+	
+	/**
+	 * @return the background startup tasks, e.g. to wait for cache warm-up;
+	 *  <code>null</code> until <code>start()</code> has completed
+	 */
+	public Future<IResult> getStartupTasks() {
+		return startupTasksDone;
 	}
+	
+	/**
+	 * @return <code>true</code> if <code>start()</code> has completed
+	 */
+	public boolean isStarted() {
+		return (startup != null && startup.isDone());
+	}
+	
+	/**
+	 * Block until the client connection stage is finished; starts
+	 * the environment if nobody has yet.
+	 */
+	public void awaitSolrClient() {
+		if (clientLatch.getCount() == 0)
+			return;
+		start();
+		try {
+			clientLatch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
 	void bootstrap() {
 		CoreBootstrap cbs = new CoreBootstrap(database);
 		cbs.bootstrap();
@@ -105,6 +426,30 @@ public class SolrEnvironment {
 		return solr;
 	}
 	
+	/**
+	 * Returns <code>null</code> until started, or if there is no MergeImplementation
+	 * @return
+	 */
+	public IMergeQueue getMergeQueue() {
+		return mergeQueue;
+	}
+	
+	/**
+	 * Can return <code>null</code>
+	 * @return
+	 */
+	public HotLocatorTracker getHotLocatorTracker() {
+		return hotLocators;
+	}
+	
+	/**
+	 * Can return <code>null</code> if <code>init</code> failed
+	 * @return
+	 */
+	public IInvalidationBroadcaster getInvalidationBroadcaster() {
+		return invalidator;
+	}
+	
 	public ISolrDataProvider getDataProvider() {
 		return database;
 	}
@@ -137,7 +482,18 @@ public class SolrEnvironment {
 	
 	
 	public void shutDown() {
-		//
+		if (startupExecutor != null)
+			startupExecutor.shutdownNow();
+		if (hotLocators != null)
+			hotLocators.shutDown();
+		if (invalidator != null)
+			invalidator.shutDown();
+		if (mergeQueue != null)
+			mergeQueue.shutDown();
+		if (database != null)
+			database.getAsyncSolrClient().shutDown();
+		if (clientIsConnected)
+			solr.shutDown();
 	}
 	/////////////////////////////
 	// Utilities
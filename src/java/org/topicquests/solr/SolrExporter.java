@@ -22,7 +22,9 @@ import org.apache.log4j.Logger;
 import org.topicquests.common.ResultPojo;
 import org.topicquests.common.api.IResult;
 import org.topicquests.common.api.ITopicQuestsOntology;
+import org.topicquests.solr.api.IResponseIteratorHandler;
 import org.topicquests.solr.api.ISolrDataProvider;
+import org.topicquests.solr.api.ISolrResultStream;
 import org.topicquests.util.LoggingPlatform;
 import org.topicquests.model.api.INodeModel;
 import org.topicquests.model.api.INode;
@@ -40,6 +42,8 @@ public class SolrExporter {
 	private ISolrDataProvider solr;
 //	private LoggingPlatform log;
 	private List<String> loopStopper = null;
+	/** documents per fetch in exportXmlFile */
+	private static final int EXPORT_PAGE_SIZE = 200;
 	/**
 	 * 
 	 */
@@ -56,14 +60,36 @@ public class SolrExporter {
 	 * @param credentials
 	 * @return
 	 */
-	public IResult exportXmlFile(Writer out, Set<String> credentials) {
-		IResult result = new ResultPojo();
-		loopStopper = new ArrayList<String>();
-		//The idea is to roam through a general query, then pass each node
-		// to exportXmlTreeFile and let it chase all the children, watching for loops.
-		// THIS METHODD WILL NOT SCALE AND SHOULD NOT BE USED
-		
-		// TODO Auto-generated method stub
+	public IResult exportXmlFile(final Writer out, Set<String> credentials) {
+		final IResult result = new ResultPojo();
+		ISolrResultStream stream = solr.streamQuery("*:*", EXPORT_PAGE_SIZE, FieldProjection.FULL, credentials, false,
+				new IResponseIteratorHandler() {
+			@Override
+			public int handleSolrIteratorResponse(IResult response) {
+				if (response.hasError())
+					result.addErrorString(response.getErrorString());
+				List<INode> page = (List<INode>)response.getResultObject();
+				if (page == null)
+					return 0; //the end
+				try {
+					for (int i=0;i<page.size();i++)
+						out.write(page.get(i).toXML());
+				} catch (Exception e) {
+					log.error(e.getMessage(), e);
+					result.addErrorString(e.getMessage());
+					return IResponseIteratorHandler.CANCEL;
+				}
+				return 1;
+			}
+		});
+		try {
+			stream.await();
+		} catch (InterruptedException e) {
+			stream.cancel();
+			Thread.currentThread().interrupt();
+			result.addErrorString("SolrExporter.exportXmlFile interrupted");
+		}
+		log.debug("SolrExporter.exportXmlFile pages "+stream.getDelivered());
 		return result;
 	}
 
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr;
+
+import java.util.*;
+
+import org.topicquests.common.ResultPojo;
+import org.topicquests.common.api.IResult;
+import org.topicquests.common.api.ITopicQuestsOntology;
+import org.topicquests.model.api.IGraphQuery;
+import org.topicquests.model.api.IGraphVisitor;
+import org.topicquests.model.api.INode;
+import org.topicquests.model.api.ITuple;
+import org.topicquests.solr.api.ISolrDataProvider;
+
+/**
+ * <p>Traversal over tuples whose object is a node.</p>
+ * <p>Each hop costs one query for the tuples of the whole frontier
+ * (split into batches of {@link #BATCH_SIZE} locators, and paged), and one
+ * {@link ISolrDataProvider#getNodes} for the nodes newly reached, which may be
+ * served from the node cache; the root is fetched with the first hop's nodes.
+ * Credentials filter both tuples and nodes; tuples are filtered in the query,
+ * so that a short page is the last.</p>
+ * @author park
+ *
+ */
+public class SolrGraphQuery implements IGraphQuery {
+	private ISolrDataProvider database;
+	/** frontier locators per query */
+	public static final int BATCH_SIZE = 100;
+	/** tuples per page */
+	private static final int PAGE_SIZE = 500;
+
+	public SolrGraphQuery(ISolrDataProvider db) {
+		database = db;
+	}
+
+	@Override
+	public IResult traverse(String rootLocator, int maxDepth, int direction,
+			int order, Set<String> relationTypes, String scopeLocator,
+			int limit, IGraphVisitor visitor, Set<String> credentials) {
+		IResult result = new ResultPojo();
+		List<INode> visited = new ArrayList<INode>();
+		result.setResultObject(visited);
+		boolean isDepthFirst = (order == DEPTH_FIRST);
+		Walk walk = new Walk(limit, visitor, visited);
+		INode root;
+		if (maxDepth < 1) {
+			root = getRoot(rootLocator, credentials, result);
+			if (root != null)
+				walk.visit(root, null, 0);
+			return result;
+		}
+		root = null;
+		//tree edges by parent, for depth first
+		Map<String,List<Edge>> children = new HashMap<String,List<Edge>>();
+		Map<String,Edge> reached = new HashMap<String,Edge>();
+		reached.put(rootLocator, null);
+		List<String> frontier = new ArrayList<String>();
+		frontier.add(rootLocator);
+		List<Edge> edges, targets;
+		for (int depth=1;depth<=maxDepth && !frontier.isEmpty();depth++) {
+			edges = expand(frontier, direction, relationTypes, scopeLocator, credentials, result);
+			frontier = new ArrayList<String>();
+			targets = fetchTargets(edges, reached, (depth == 1) ? rootLocator : null, credentials, result);
+			if (depth == 1) {
+				root = takeRoot(targets);
+				if (root == null)
+					return result;
+				if (!isDepthFirst && !walk.visit(root, null, 0))
+					return result;
+			}
+			Iterator<Edge>itr = targets.iterator();
+			Edge e;
+			List<Edge> l;
+			while (itr.hasNext()) {
+				e = itr.next();
+				if (reached.containsKey(e.to.getLocator()))
+					continue;
+				reached.put(e.to.getLocator(), e);
+				e.depth = depth;
+				frontier.add(e.to.getLocator());
+				if (isDepthFirst) {
+					l = children.get(e.from);
+					if (l == null) {
+						l = new ArrayList<Edge>();
+						children.put(e.from, l);
+					}
+					l.add(e);
+				} else if (!walk.visit(e.to, e.tuple, depth))
+					return result;
+			}
+		}
+		if (isDepthFirst)
+			walkDepthFirst(root, children, walk);
+		return result;
+	}
+
+	@Override
+	public IResult findPath(String fromLocator, String toLocator, int maxDepth,
+			int direction, Set<String> relationTypes, Set<String> credentials) {
+		IResult result = new ResultPojo();
+		List<INode> path = new ArrayList<INode>();
+		result.setResultObject(path);
+		INode root;
+		if (fromLocator.equals(toLocator)) {
+			root = getRoot(fromLocator, credentials, result);
+			if (root != null)
+				path.add(root);
+			return result;
+		}
+		Map<String,Edge> reached = new HashMap<String,Edge>();
+		reached.put(fromLocator, null);
+		List<String> frontier = new ArrayList<String>();
+		frontier.add(fromLocator);
+		List<Edge> edges, targets;
+		Edge e;
+		root = null;
+		for (int depth=1;depth<=maxDepth && !frontier.isEmpty();depth++) {
+			edges = expand(frontier, direction, relationTypes, null, credentials, result);
+			frontier = new ArrayList<String>();
+			targets = fetchTargets(edges, reached, (depth == 1) ? fromLocator : null, credentials, result);
+			if (depth == 1) {
+				root = takeRoot(targets);
+				if (root == null)
+					return result;
+			}
+			Iterator<Edge>itr = targets.iterator();
+			while (itr.hasNext()) {
+				e = itr.next();
+				if (reached.containsKey(e.to.getLocator()))
+					continue;
+				reached.put(e.to.getLocator(), e);
+				if (e.to.getLocator().equals(toLocator)) {
+					//walk back to the root
+					LinkedList<INode> l = new LinkedList<INode>();
+					while (e != null) {
+						l.addFirst(e.to);
+						e = reached.get(e.from);
+					}
+					l.addFirst(root);
+					path.addAll(l);
+					return result;
+				}
+				frontier.add(e.to.getLocator());
+			}
+		}
+		return result;
+	}
+
+	INode getRoot(String locator, Set<String> credentials, IResult result) {
+		List<String> l = new ArrayList<String>();
+		l.add(locator);
+		IResult r = database.getNodes(l, credentials);
+		if (r.hasError())
+			result.addErrorString(r.getErrorString());
+		List<INode> nodes = (List<INode>)r.getResultObject();
+		if (nodes == null || nodes.isEmpty())
+			return null;
+		return nodes.get(0);
+	}
+
+	/**
+	 * @param targets from {@link #fetchTargets} with a root locator
+	 * @return the root, removed from <code>targets</code>, or <code>null</code>
+	 *  if it cannot be seen
+	 */
+	INode takeRoot(List<Edge> targets) {
+		if (targets.isEmpty() || targets.get(0).tuple != null)
+			return null;
+		return targets.remove(0).to;
+	}
+
+	/**
+	 * Find the tuples which leave <code>frontier</code>
+	 * @param frontier
+	 * @param direction
+	 * @param relationTypes
+	 * @param scopeLocator
+	 * @param credentials
+	 * @param result collects errors
+	 * @return edges whose <code>to</code> is not yet fetched
+	 */
+	List<Edge> expand(List<String> frontier, int direction, Set<String> relationTypes,
+			String scopeLocator, Set<String> credentials, IResult result) {
+		List<Edge> edges = new ArrayList<Edge>();
+		Set<String> from = new HashSet<String>(frontier);
+		StringBuilder filter = new StringBuilder();
+		filter.append(" AND "+ITopicQuestsOntology.TUPLE_OBJECT_TYPE_PROPERTY+":"+ITopicQuestsOntology.NODE_TYPE);
+		filter.append(" AND ("+QueryUtil.credentialFilter(credentials)+")");
+		if (relationTypes != null && !relationTypes.isEmpty())
+			filter.append(" AND "+QueryUtil.orQuery(ITopicQuestsOntology.INSTANCE_OF_PROPERTY_TYPE,
+					new ArrayList<String>(relationTypes)));
+		if (scopeLocator != null)
+			filter.append(" AND "+ITopicQuestsOntology.SCOPE_LIST_PROPERTY_TYPE+":"+QueryUtil.escapeQueryCulprits(scopeLocator));
+		int len = frontier.size();
+		List<String> batch;
+		String query;
+		IResult r;
+		List<INode> tuples;
+		ITuple t;
+		int start;
+		for (int i=0;i<len;i+=BATCH_SIZE) {
+			batch = frontier.subList(i, Math.min(len, i+BATCH_SIZE));
+			if (direction == OUTGOING)
+				query = QueryUtil.orQuery(ITopicQuestsOntology.TUPLE_SUBJECT_PROPERTY, batch);
+			else if (direction == INCOMING)
+				query = QueryUtil.orQuery(ITopicQuestsOntology.TUPLE_OBJECT_PROPERTY, batch);
+			else
+				query = "("+QueryUtil.orQuery(ITopicQuestsOntology.TUPLE_SUBJECT_PROPERTY, batch)+
+						" OR "+QueryUtil.orQuery(ITopicQuestsOntology.TUPLE_OBJECT_PROPERTY, batch)+")";
+			query += filter.toString();
+			start = 0;
+			while (true) {
+				r = database.runQuery(query, start, PAGE_SIZE, FieldProjection.TUPLE_ENDPOINTS, credentials);
+				if (r.hasError()) {
+					result.addErrorString(r.getErrorString());
+					break;
+				}
+				tuples = (List<INode>)r.getResultObject();
+				if (tuples == null)
+					break;
+				Iterator<INode>itr = tuples.iterator();
+				while (itr.hasNext()) {
+					t = (ITuple)itr.next();
+					if (direction != INCOMING && from.contains(t.getSubjectLocator()))
+						edges.add(new Edge(t.getSubjectLocator(), t, t.getObject()));
+					if (direction != OUTGOING && from.contains(t.getObject()))
+						edges.add(new Edge(t.getObject(), t, t.getSubjectLocator()));
+				}
+				//the query leaves out what credentials hide, so a short page is the last
+				if (tuples.size() < PAGE_SIZE)
+					break;
+				start += PAGE_SIZE;
+			}
+		}
+		return edges;
+	}
+
+	/**
+	 * Fetch, in one batch, the nodes at the far end of <code>edges</code>
+	 * which have not been reached; edges to nodes which cannot be seen are dropped
+	 * @param edges
+	 * @param reached
+	 * @param rootLocator if not <code>null</code>, also fetched; if it can be seen, it
+	 *  is first in the result, as an edge with no tuple
+	 * @param credentials
+	 * @param result
+	 * @return
+	 */
+	List<Edge> fetchTargets(List<Edge> edges, Map<String,Edge> reached, String rootLocator,
+			Set<String> credentials, IResult result) {
+		List<String> lox = new ArrayList<String>();
+		Set<String> seen = new HashSet<String>();
+		if (rootLocator != null) {
+			lox.add(rootLocator);
+			seen.add(rootLocator);
+		}
+		Iterator<Edge>itr = edges.iterator();
+		Edge e;
+		while (itr.hasNext()) {
+			e = itr.next();
+			if (e.toLocator != null && !reached.containsKey(e.toLocator) && seen.add(e.toLocator))
+				lox.add(e.toLocator);
+		}
+		List<Edge> found = new ArrayList<Edge>();
+		if (lox.isEmpty())
+			return found;
+		IResult r = database.getNodes(lox, credentials);
+		if (r.hasError())
+			result.addErrorString(r.getErrorString());
+		Map<String,INode> nodes = new HashMap<String,INode>();
+		Iterator<INode>nitr = ((List<INode>)r.getResultObject()).iterator();
+		INode n;
+		while (nitr.hasNext()) {
+			n = nitr.next();
+			nodes.put(n.getLocator(), n);
+		}
+		if (rootLocator != null && nodes.containsKey(rootLocator)) {
+			e = new Edge(null, null, rootLocator);
+			e.to = nodes.get(rootLocator);
+			found.add(e);
+		}
+		itr = edges.iterator();
+		while (itr.hasNext()) {
+			e = itr.next();
+			e.to = nodes.get(e.toLocator);
+			if (e.to != null)
+				found.add(e);
+		}
+		return found;
+	}
+
+	void walkDepthFirst(INode root, Map<String,List<Edge>> children, Walk walk) {
+		LinkedList<Edge> stack = new LinkedList<Edge>();
+		if (!walk.visit(root, null, 0))
+			return;
+		push(stack, children.get(root.getLocator()));
+		Edge e;
+		while (!stack.isEmpty()) {
+			e = stack.removeFirst();
+			if (!walk.visit(e.to, e.tuple, e.depth))
+				return;
+			push(stack, children.get(e.to.getLocator()));
+		}
+	}
+
+	void push(LinkedList<Edge> stack, List<Edge> edges) {
+		if (edges == null)
+			return;
+		//keep sibling order
+		for (int i=edges.size()-1;i>=0;i--)
+			stack.addFirst(edges.get(i));
+	}
+
+	/**
+	 * One tuple followed from <code>from</code>
+	 */
+	class Edge {
+		String from;
+		ITuple tuple;
+		String toLocator;
+		INode to = null;
+		int depth = 0;
+
+		Edge(String f, ITuple t, String tl) {
+			from = f;
+			tuple = t;
+			toLocator = tl;
+		}
+	}
+
+	/**
+	 * Visits, the limit and the visitor
+	 */
+	class Walk {
+		int limit;
+		IGraphVisitor visitor;
+		List<INode> visited;
+
+		Walk(int lim, IGraphVisitor v, List<INode> l) {
+			limit = lim;
+			visitor = v;
+			visited = l;
+		}
+
+		/**
+		 * @return <code>false</code> if the traversal must end
+		 */
+		boolean visit(INode n, ITuple via, int depth) {
+			visited.add(n);
+			if (visitor != null && !visitor.visit(n, via, depth))
+				return false;
+			return (limit < 0 || visited.size() < limit);
+		}
+	}
+}
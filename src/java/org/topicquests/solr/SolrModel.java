@@ -15,11 +15,16 @@
  */
 package org.topicquests.solr;
 
-import java.util.Set;
+import java.util.*;
 
+import org.topicquests.common.ResultPojo;
+import org.topicquests.common.api.IResult;
 import org.topicquests.common.api.ITopicQuestsOntology;
+import org.topicquests.model.api.INode;
 import org.topicquests.solr.api.ISolrModel;
 import org.topicquests.solr.api.ISolrQueryIterator;
+import org.topicquests.solr.suggest.LabelSuggester;
+import org.topicquests.solr.suggest.LabelSuggestion;
 
 /**
  * @author park
@@ -99,4 +104,69 @@ public class SolrModel implements ISolrModel {
 		return itr;
 	}
 
+	@Override
+	public IResult countInstancesByType(int limit, Set<String> credentials) {
+		return environment.getDataProvider().facetCounts("*:* -"+ITopicQuestsOntology.TUPLE_SUBJECT_PROPERTY+":[* TO *]",
+				ITopicQuestsOntology.INSTANCE_OF_PROPERTY_TYPE, limit, credentials);
+	}
+
+	@Override
+	public IResult countTuplesByRelation(int limit, Set<String> credentials) {
+		return environment.getDataProvider().facetCounts(ITopicQuestsOntology.TUPLE_SUBJECT_PROPERTY+":[* TO *]",
+				ITopicQuestsOntology.INSTANCE_OF_PROPERTY_TYPE, limit, credentials);
+	}
+
+	@Override
+	public IResult countNodesByCreator(int limit, Set<String> credentials) {
+		return environment.getDataProvider().facetCounts("*:*",
+				ITopicQuestsOntology.CREATOR_ID_PROPERTY, limit, credentials);
+	}
+
+	@Override
+	public IResult suggestLabels(String prefix, String language, int count, Set<String> credentials) {
+		LabelSuggester suggester = environment.getDataProvider().getLabelSuggester();
+		if (suggester != null && suggester.isReady()) {
+			IResult result = new ResultPojo();
+			result.setResultObject(suggester.suggest(prefix, language, count, credentials));
+			return result;
+		}
+		//not built yet: a prefix query, ranked here
+		String field = makeField(labelQuery,language);
+		String px = QueryUtil.escapeQueryCulprits(prefix);
+		if (px.startsWith("\""))
+			px = px.substring(1, px.length()-1).replace(" ", "\\ ");
+		IResult result = environment.getDataProvider().runQuery(field+":"+px+"*", 0, count, credentials);
+		List<INode> nodes = (List<INode>)result.getResultObject();
+		List<LabelSuggestion> l = new ArrayList<LabelSuggestion>();
+		if (nodes != null) {
+			String lp = prefix.toLowerCase();
+			Iterator<INode>itr = nodes.iterator();
+			INode n;
+			List<String> labels;
+			String label;
+			while (itr.hasNext()) {
+				n = itr.next();
+				labels = n.listLabels(language);
+				if (labels == null)
+					continue;
+				for (int i=0;i<labels.size();i++) {
+					label = labels.get(i);
+					if (label.toLowerCase().startsWith(lp))
+						l.add(new LabelSuggestion(label, n.getLocator(),
+								n.listTuples().size()+n.listRestrictedTuples().size()));
+				}
+			}
+			Collections.sort(l, new Comparator<LabelSuggestion>() {
+				@Override
+				public int compare(LabelSuggestion a, LabelSuggestion b) {
+					return (a.getWeight() > b.getWeight()) ? -1 : ((a.getWeight() < b.getWeight()) ? 1 : 0);
+				}
+			});
+			if (l.size() > count)
+				l = new ArrayList<LabelSuggestion>(l.subList(0, count));
+		}
+		result.setResultObject(l);
+		return result;
+	}
+
 }
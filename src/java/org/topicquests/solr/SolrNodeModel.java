@@ -21,6 +21,7 @@ import java.util.*;
 import org.topicquests.common.api.IResult;
 import org.topicquests.common.ResultPojo;
 import org.topicquests.model.api.IMergeImplementation;
+import org.topicquests.model.api.IMergeQueue;
 import org.topicquests.model.api.INodeModel;
 import org.topicquests.model.api.INode;
 import org.topicquests.model.api.ITuple;
@@ -40,13 +41,25 @@ public class SolrNodeModel implements INodeModel {
 	private ISolrDataProvider database;
 	private TrieDateField dateField;
 	private IMergeImplementation merger;
+	/** <code>null</code> means merges go straight to <code>merger</code> */
+	private IMergeQueue mergeQueue;
 
 	/**
 	 * 
 	 */
 	public SolrNodeModel(ISolrDataProvider p, IMergeImplementation m) {
+		this(p, m, null);
+	}
+
+	/**
+	 * @param p
+	 * @param m
+	 * @param q queues and deduplicates merges for <code>m</code>; can be <code>null</code>
+	 */
+	public SolrNodeModel(ISolrDataProvider p, IMergeImplementation m, IMergeQueue q) {
 		database = p;
 		merger = m;
+		mergeQueue = q;
 		//not all instances will include merge capabilities
 		if (merger != null)
 			merger.setNodeModel(this);
@@ -332,9 +345,21 @@ public class SolrNodeModel implements INodeModel {
 	public IResult assertMerge(String sourceNodeLocator,
 			String targetNodeLocator, Map<String, Double> mergeData,
 			double mergeConfidence, String userLocator) {
-		if (merger != null)
-			return merger.assertMerge(sourceNodeLocator, targetNodeLocator, mergeData, mergeConfidence, userLocator);
 		IResult result = new ResultPojo();
+		if (merger != null && mergeQueue == null)
+			return merger.assertMerge(sourceNodeLocator, targetNodeLocator, mergeData, mergeConfidence, userLocator);
+		if (merger != null) {
+			try {
+				return mergeQueue.submitMerge(sourceNodeLocator, targetNodeLocator, mergeData, mergeConfidence, userLocator).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				result.addErrorString("SolrNodeModel.assertMerge interrupted");
+			} catch (Exception e) {
+				log.logError("SolrNodeModel.assertMerge "+e.getMessage(), e);
+				result.addErrorString(e.getMessage());
+			}
+			return result;
+		}
 		result.addErrorString("SolrNodeModel.assertMerge called: No Merger Installed");
 		log.logError("SolrNodeModel.assertMerge called: No Merger Installed", null);
 		return result;
@@ -410,6 +435,8 @@ public class SolrNodeModel implements INodeModel {
 	public IResult changePropertyValue(INode node, String key, String newValue) {
 
 		String sourceNodeLocator = node.getLocator();
+		if (database.useOptimisticConcurrency())
+			return database.partialUpdateData(sourceNodeLocator, new SetPropertyMutator(key, newValue));
 		Map<String,Object> updateMap = new HashMap<String,Object>();
 		Map<String,String> newMap = new HashMap<String,String>();
 		Map<String,Object> myMap = node.getProperties();
@@ -427,6 +454,8 @@ public class SolrNodeModel implements INodeModel {
 	public IResult addPropertyValueInList(INode node, String key,
 			String newValue) {
 		String sourceNodeLocator = node.getLocator();
+		if (database.useOptimisticConcurrency())
+			return database.partialUpdateData(sourceNodeLocator, new AddPropertyValueMutator(key, newValue));
 		Map<String,Object> updateMap = new HashMap<String,Object>();
 		Map<String,Object> newMap = new HashMap<String,Object>();
 		Map<String,Object> myMap = node.getProperties();
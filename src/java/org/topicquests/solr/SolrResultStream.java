@@ -0,0 +1,255 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.solr.common.SolrDocumentList;
+import org.topicquests.common.ResultPojo;
+import org.topicquests.common.api.IResult;
+import org.topicquests.model.api.INode;
+import org.topicquests.solr.api.IAsyncSolrClient;
+import org.topicquests.solr.api.IResponseIteratorHandler;
+import org.topicquests.solr.api.ISolrResultStream;
+import org.topicquests.util.LoggingPlatform;
+
+/**
+ * <p>Pushes the results of one query to an {@link IResponseIteratorHandler},
+ * a page at a time, fetched on the {@link IAsyncSolrClient} pool</p>
+ * <p>At most one page is fetched ahead of what the handler has asked for, so
+ * memory stays bounded however large the result; delivery happens on whichever
+ * thread made a unit available: the pool thread which fetched it, or the thread
+ * which called {@link #request(int)}</p>
+ * <p>Pages are walked by <code>start</code> and <code>rows</code>: documents
+ * written during the walk can shift a page boundary</p>
+ * @author park
+ *
+ */
+public class SolrResultStream implements ISolrResultStream {
+	private LoggingPlatform log = LoggingPlatform.getInstance();
+	private SolrDataProvider database;
+	private IAsyncSolrClient asyncClient;
+	private String queryString;
+	private int pageSize;
+	private String projection;
+	private Set<String> credentials;
+	private boolean isByDocument;
+	private IResponseIteratorHandler handler;
+	/** everything below is guarded by <code>this</code> */
+	private LinkedList<Object> buffer = new LinkedList<Object>();
+	private long demand = 0, delivered = 0;
+	private int nextStart = 0;
+	private boolean isFetching = false, isDelivering = false, isExhausted = false, isCancelled = false;
+	/** the end was delivered */
+	private boolean isFinished = false;
+	private String error = null;
+	private CountDownLatch done = new CountDownLatch(1);
+
+	/**
+	 * @param db
+	 * @param c
+	 * @param queryString
+	 * @param pageSize
+	 * @param projection see {@link FieldProjection}
+	 * @param credentials
+	 * @param byDocument <code>true</code> to deliver one {@link INode} at a time
+	 * @param h
+	 */
+	public SolrResultStream(SolrDataProvider db, IAsyncSolrClient c, String queryString, int pageSize,
+			String projection, Set<String> credentials, boolean byDocument, IResponseIteratorHandler h) {
+		database = db;
+		asyncClient = c;
+		this.queryString = queryString;
+		this.pageSize = pageSize;
+		this.projection = projection;
+		this.credentials = credentials;
+		isByDocument = byDocument;
+		handler = h;
+	}
+
+	/**
+	 * Begin with a demand of one
+	 */
+	public void start() {
+		request(1);
+	}
+
+	@Override
+	public void request(int n) {
+		if (n <= 0)
+			return;
+		synchronized(this) {
+			demand += n;
+		}
+		fetchMore();
+		drain();
+	}
+
+	@Override
+	public void cancel() {
+		boolean isIdle;
+		synchronized(this) {
+			isCancelled = true;
+			buffer.clear();
+			isIdle = !isDelivering;
+		}
+		if (isIdle)
+			done.countDown();
+	}
+
+	@Override
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	@Override
+	public void await() throws InterruptedException {
+		done.await();
+	}
+
+	@Override
+	public synchronized long getDelivered() {
+		return delivered;
+	}
+
+	/**
+	 * Buffered units below which the next page is fetched
+	 * @return
+	 */
+	int lowWater() {
+		return isByDocument ? pageSize : 1;
+	}
+
+	/**
+	 * Fetch the next page unless one is in flight or enough are buffered
+	 */
+	void fetchMore() {
+		final int start;
+		synchronized(this) {
+			if (isFetching || isExhausted || isCancelled || buffer.size() >= lowWater())
+				return;
+			isFetching = true;
+			start = nextStart;
+			nextStart += pageSize;
+		}
+		asyncClient.submit(new Callable<IResult>() {
+			@Override
+			public IResult call() {
+				IResult x;
+				try {
+					x = database.client().runQuery(queryString, start, pageSize, FieldProjection.fields(projection));
+				} catch (Exception e) {
+					log.logError("SolrResultStream "+e.getMessage(), e);
+					x = new ResultPojo();
+					x.addErrorString(e.getMessage());
+				}
+				onFetched(start, x);
+				return x;
+			}
+		});
+	}
+
+	/**
+	 * A page came back
+	 * @param start
+	 * @param x the client's response
+	 */
+	void onFetched(int start, IResult x) {
+		boolean isLast = true;
+		List<INode> page = null;
+		String err = x.getErrorString();
+		if (!x.hasError()) {
+			SolrDocumentList raw = (SolrDocumentList)x.getResultObject();
+			isLast = (raw == null || raw.isEmpty() || start + raw.size() >= raw.getNumFound());
+			try {
+				page = (List<INode>)database.convertFetched(x, projection, credentials).getResultObject();
+			} catch (Exception e) {
+				log.logError("SolrResultStream "+e.getMessage(), e);
+				err = e.getMessage();
+				isLast = true;
+			}
+		}
+		synchronized(this) {
+			isFetching = false;
+			if (isCancelled)
+				return;
+			if (page == null)
+				error = err;
+			else if (isByDocument)
+				buffer.addAll(page);
+			else if (!page.isEmpty())
+				buffer.add(page);
+			if (isLast)
+				isExhausted = true;
+		}
+		fetchMore();
+		drain();
+	}
+
+	/**
+	 * Deliver while there is demand and something to deliver; the end is
+	 * delivered regardless of demand
+	 */
+	void drain() {
+		Object unit;
+		boolean isEnd, isStopped;
+		String err;
+		int more;
+		while (true) {
+			synchronized(this) {
+				if (isDelivering || isCancelled || isFinished)
+					return;
+				isEnd = buffer.isEmpty() && isExhausted && !isFetching;
+				if (!isEnd && (buffer.isEmpty() || demand <= 0))
+					return;
+				isDelivering = true;
+				unit = isEnd ? null : buffer.removeFirst();
+				if (!isEnd) {
+					demand--;
+					delivered++;
+				}
+				err = error;
+			}
+			IResult r = new ResultPojo();
+			r.setResultObject(unit);
+			if (isEnd && err != null)
+				r.addErrorString(err);
+			try {
+				more = handler.handleSolrIteratorResponse(r);
+			} catch (Exception e) {
+				log.logError("SolrResultStream handler "+e.getMessage(), e);
+				more = IResponseIteratorHandler.CANCEL;
+			}
+			synchronized(this) {
+				isDelivering = false;
+				if (!isEnd && more == IResponseIteratorHandler.CANCEL) {
+					isCancelled = true;
+					buffer.clear();
+				} else if (more > 0)
+					demand += more;
+				isFinished = isEnd;
+				isStopped = isEnd || isCancelled;
+			}
+			if (isStopped) {
+				done.countDown();
+				return;
+			}
+			fetchMore();
+		}
+	}
+}
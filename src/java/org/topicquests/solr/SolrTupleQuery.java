@@ -15,15 +15,22 @@
  */
 package org.topicquests.solr;
 
-import java.util.Set;
+import java.util.*;
 
+import org.topicquests.common.ResultPojo;
 import org.topicquests.common.api.IResult;
 import org.topicquests.common.api.ITopicQuestsOntology;
+import org.topicquests.model.api.IGraphQuery;
+import org.topicquests.model.api.INode;
+import org.topicquests.model.api.ITuple;
 import org.topicquests.model.api.ITupleQuery;
 import org.topicquests.solr.api.ISolrClient;
 import org.topicquests.solr.api.ISolrDataProvider;
 
 /**
+ * <p>The node-returning queries resolve tuple endpoints in Solr with a
+ * <code>{!join}</code> from the tuples to the nodes, in one request; where the
+ * client cannot join, they fetch the tuples and then their endpoints</p>
  * @author park
  *
  */
@@ -47,8 +54,7 @@ public class SolrTupleQuery implements ITupleQuery {
 		String queryString = ITopicQuestsOntology.INSTANCE_OF_PROPERTY_TYPE+":"+relationLocator+ //the relation
 				" AND "+ITopicQuestsOntology.TUPLE_OBJECT_PROPERTY+":"+objectLocator; // an object
 		//NOTE: we need to run this as an iterator
-		IResult result = database.runQuery(queryString, 0, 50, credentials);
-		return result;
+		return listEndpoints(null, queryString, objectLocator, 0, 50, credentials);
 	}
 
 	/* (non-Javadoc) tested
@@ -61,7 +67,98 @@ public class SolrTupleQuery implements ITupleQuery {
 				" AND "+ITopicQuestsOntology.TUPLE_OBJECT_TYPE_PROPERTY+":"+ITopicQuestsOntology.NODE_TYPE+ //require only nodes, not literals
 				" AND "+ITopicQuestsOntology.TUPLE_SUBJECT_PROPERTY+":"+subjectLocator; // a subject
 		//NOTE: we need to run this as an iterator
-		IResult result = database.runQuery(queryString, 0, 50, credentials);
+		return listEndpoints(queryString, null, subjectLocator, 0, 50, credentials);
+	}
+
+	@Override
+	public IResult listNeighbors(String locator, String relationLocator,
+			int direction, int start, int count, Set<String> credentials) {
+		String lox = QueryUtil.escapeQueryCulprits(locator);
+		String rel = (relationLocator == null) ? "" :
+			" AND "+ITopicQuestsOntology.INSTANCE_OF_PROPERTY_TYPE+":"+QueryUtil.escapeQueryCulprits(relationLocator);
+		String outgoing = null, incoming = null;
+		if (direction != IGraphQuery.INCOMING)
+			outgoing = ITopicQuestsOntology.TUPLE_SUBJECT_PROPERTY+":"+lox+rel;
+		if (direction != IGraphQuery.OUTGOING)
+			incoming = ITopicQuestsOntology.TUPLE_OBJECT_PROPERTY+":"+lox+rel;
+		return listEndpoints(outgoing, incoming, locator, start, count, credentials);
+	}
+
+	/**
+	 * Nodes at the far end of the tuples matched by either query
+	 * @param outgoing matches tuples whose subject is <code>locator</code>; can be <code>null</code>
+	 * @param incoming matches tuples whose object is <code>locator</code>; can be <code>null</code>
+	 * @param locator
+	 * @param start
+	 * @param count
+	 * @param credentials
+	 * @return
+	 */
+	IResult listEndpoints(String outgoing, String incoming, String locator,
+			int start, int count, Set<String> credentials) {
+		if (solr.supportsJoin()) {
+			//private tuples must not lead to their endpoints
+			String filter = " AND ("+QueryUtil.credentialFilter(credentials)+")";
+			String out = null, in = null;
+			if (outgoing != null)
+				out = QueryUtil.joinQuery(ITopicQuestsOntology.TUPLE_OBJECT_PROPERTY,
+						ITopicQuestsOntology.LOCATOR_PROPERTY, "("+outgoing+")"+filter);
+			if (incoming != null)
+				in = QueryUtil.joinQuery(ITopicQuestsOntology.TUPLE_SUBJECT_PROPERTY,
+						ITopicQuestsOntology.LOCATOR_PROPERTY, "("+incoming+")"+filter);
+			String queryString;
+			if (out == null)
+				queryString = in;
+			else if (in == null)
+				queryString = out;
+			else
+				queryString = QueryUtil.nestedQuery(out)+" OR "+QueryUtil.nestedQuery(in);
+			return database.runQuery(queryString, start, count, credentials);
+		}
+		//here, start and count page the tuples rather than the nodes
+		String queryString;
+		if (incoming == null)
+			queryString = outgoing;
+		else if (outgoing == null)
+			queryString = incoming;
+		else
+			queryString = "("+outgoing+") OR ("+incoming+")";
+		IResult tuples = database.runQuery(queryString, start, count, credentials);
+		return fetchEndpoints(database, tuples, locator, outgoing != null, incoming != null, credentials);
+	}
+
+	/**
+	 * Fetch the nodes at the far end of <code>tuples</code> in one request
+	 * @param db
+	 * @param tuples a result whose object is a list of tuples
+	 * @param locator the near end
+	 * @param isOutgoing include objects of tuples whose subject is <code>locator</code>
+	 * @param isIncoming include subjects of tuples whose object is <code>locator</code>
+	 * @param credentials
+	 * @return
+	 */
+	static IResult fetchEndpoints(ISolrDataProvider db, IResult tuples, String locator,
+			boolean isOutgoing, boolean isIncoming, Set<String> credentials) {
+		Set<String> lox = new LinkedHashSet<String>();
+		List<INode> l = (List<INode>)tuples.getResultObject();
+		if (l != null) {
+			ITuple t;
+			for (int i=0;i<l.size();i++) {
+				t = (ITuple)l.get(i);
+				if (isOutgoing && locator.equals(t.getSubjectLocator()) && t.getObject() != null)
+					lox.add(t.getObject());
+				if (isIncoming && locator.equals(t.getObject()) && t.getSubjectLocator() != null)
+					lox.add(t.getSubjectLocator());
+			}
+		}
+		IResult result;
+		if (lox.isEmpty()) {
+			result = new ResultPojo();
+			result.setResultObject(new ArrayList<INode>());
+		} else
+			result = db.getNodes(new ArrayList<String>(lox), credentials);
+		if (tuples.hasError())
+			result.addErrorString(tuples.getErrorString());
 		return result;
 	}
 
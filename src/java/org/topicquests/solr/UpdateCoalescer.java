@@ -0,0 +1,226 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import org.topicquests.common.ResultPojo;
+import org.topicquests.common.api.IResult;
+import org.topicquests.common.api.ITopicQuestsOntology;
+import org.topicquests.solr.api.ISolrClient;
+import org.topicquests.util.LoggingPlatform;
+
+/**
+ * <p>Merges concurrent partial updates on the same locator into one
+ * atomic-update document.</p>
+ * <p>The first caller for a locator becomes the leader: it holds its update open
+ * while an earlier update to the locator is still being sent, and then for
+ * <code>window</code> milliseconds, during which updates from other threads
+ * for the same locator are folded into it; then it sends one document and all
+ * callers receive the same result.</p>
+ * <p>Folding rules, per field:
+ * <ul><li><code>set</code> then <code>set</code>: the later value</li>
+ * <li><code>set</code> then <code>add</code>: <code>set</code> to the list with the value added</li>
+ * <li><code>add</code> then <code>add</code>: <code>add</code> both values</li>
+ * <li><code>add</code> then <code>set</code>: the <code>set</code></li></ul>
+ * Anything else, including an update which carries <code>_version_</code>,
+ * starts a new update, which is not sent until the one before it has been;
+ * so the order of updates to a locator is preserved</p>
+ * @author park
+ *
+ */
+public class UpdateCoalescer {
+	private LoggingPlatform log = LoggingPlatform.getInstance();
+	private ISolrClient client;
+	private long window;
+	/** the latest batch, open or being sent, keyed by locator */
+	private Map<String,Batch> pending = new HashMap<String,Batch>();
+
+	/**
+	 * @param c
+	 * @param windowMillis
+	 */
+	public UpdateCoalescer(ISolrClient c, long windowMillis) {
+		client = c;
+		window = windowMillis;
+	}
+
+	/**
+	 * Send <code>fields</code>, perhaps together with other updates to the same locator
+	 * @param fields must include the locator
+	 * @return
+	 */
+	public IResult submit(Map<String,Object> fields) {
+		String lox = (String)fields.get(ITopicQuestsOntology.LOCATOR_PROPERTY);
+		Batch batch = null, previous;
+		synchronized(pending) {
+			previous = pending.get(lox);
+			if (previous == null || !previous.fold(fields)) {
+				//we are the leader of a new batch, sent after the one before it
+				batch = new Batch(fields);
+				pending.put(lox, batch);
+			}
+		}
+		if (batch == null)
+			return previous.await(); //follower
+		if (previous != null)
+			previous.await();
+		if (window > 0) {
+			try {
+				Thread.sleep(window);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized(pending) {
+			batch.isFoldable = false; //sealed
+		}
+		IResult result;
+		try {
+			result = client.partialUpdateData(batch.document);
+		} catch (Exception e) {
+			log.logError("UpdateCoalescer.submit "+e.getMessage(), e);
+			result = new ResultPojo();
+			result.addErrorString(e.getMessage());
+		}
+		if (batch.count > 1)
+			log.logDebug("UpdateCoalescer coalesced "+batch.count+" "+lox);
+		synchronized(pending) {
+			if (pending.get(lox) == batch)
+				pending.remove(lox);
+		}
+		batch.finish(result); //a later batch may now be sent
+		return result;
+	}
+
+	/**
+	 * One pending update document; guarded by <code>pending</code>
+	 */
+	class Batch {
+		Map<String,Object> document = new HashMap<String,Object>();
+		int count = 1;
+		private IResult result = null;
+		private CountDownLatch done = new CountDownLatch(1);
+		/** <code>false</code> once sealed for sending, or if it carries a version */
+		boolean isFoldable;
+
+		Batch(Map<String,Object> fields) {
+			isFoldable = !fields.containsKey(ITopicQuestsOntology.SOLR_VERSION_PROPERTY_TYPE);
+			Iterator<String>itr = fields.keySet().iterator();
+			String key;
+			Object v;
+			while (itr.hasNext()) {
+				key = itr.next();
+				v = fields.get(key);
+				if (v instanceof Map)
+					document.put(key, new HashMap<String,Object>((Map<String,Object>)v));
+				else
+					document.put(key, v);
+			}
+		}
+
+		/**
+		 * Fold <code>fields</code> into this document if every field can be folded
+		 * @param fields
+		 * @return <code>false</code> if nothing was changed
+		 */
+		boolean fold(Map<String,Object> fields) {
+			if (!isFoldable || fields.containsKey(ITopicQuestsOntology.SOLR_VERSION_PROPERTY_TYPE))
+				return false;
+			Map<String,Map<String,Object>> merged = new HashMap<String,Map<String,Object>>();
+			Iterator<String>itr = fields.keySet().iterator();
+			String key;
+			Object v;
+			Map<String,Object> m;
+			while (itr.hasNext()) {
+				key = itr.next();
+				if (key.equals(ITopicQuestsOntology.LOCATOR_PROPERTY))
+					continue;
+				v = fields.get(key);
+				if (!(v instanceof Map))
+					return false;
+				m = foldField(document.get(key), (Map<String,Object>)v);
+				if (m == null)
+					return false;
+				merged.put(key, m);
+			}
+			document.putAll(merged);
+			count++;
+			return true;
+		}
+
+		/**
+		 * @param existing can be <code>null</code>
+		 * @param update
+		 * @return <code>null</code> if these cannot be folded
+		 */
+		Map<String,Object> foldField(Object existing, Map<String,Object> update) {
+			if (update.size() != 1)
+				return null;
+			String op = update.keySet().iterator().next();
+			Object value = update.get(op);
+			Map<String,Object> result = new HashMap<String,Object>();
+			if (existing == null) {
+				if (!op.equals("set") && !op.equals("add"))
+					return null;
+				result.put(op, value);
+				return result;
+			}
+			if (!(existing instanceof Map))
+				return null;
+			Map<String,Object> old = (Map<String,Object>)existing;
+			if (old.size() != 1)
+				return null;
+			String oldOp = old.keySet().iterator().next();
+			Object oldValue = old.get(oldOp);
+			if (op.equals("set") && (oldOp.equals("set") || oldOp.equals("add"))) {
+				result.put("set", value);
+			} else if (op.equals("add") && (oldOp.equals("set") || oldOp.equals("add"))) {
+				List<Object> vals = new ArrayList<Object>();
+				addValues(vals, oldValue);
+				addValues(vals, value);
+				result.put(oldOp, vals);
+			} else
+				return null;
+			return result;
+		}
+
+		void addValues(List<Object> vals, Object v) {
+			if (v instanceof Collection)
+				vals.addAll((Collection<Object>)v);
+			else if (v != null)
+				vals.add(v);
+		}
+
+		IResult await() {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				IResult r = new ResultPojo();
+				r.addErrorString("UpdateCoalescer interrupted");
+				return r;
+			}
+			return result;
+		}
+
+		void finish(IResult r) {
+			result = r;
+			done.countDown();
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.api;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import org.topicquests.common.api.IResult;
+
+/**
+ * <p>{@link ISolrClient} calls which return at once; each future yields what
+ * the blocking call would have returned</p>
+ * <p>Calls run on a bounded pool of threads over the client's pooled
+ * connections, however many are outstanding</p>
+ * @author park
+ *
+ */
+public interface IAsyncSolrClient {
+
+	/**
+	 * @see ISolrClient#runQuery(String, int, int, String[])
+	 */
+	Future<IResult> runQueryAsync(String queryString, int start, int count, String [] fields);
+
+	/**
+	 * @see ISolrClient#count(String, String)
+	 */
+	Future<IResult> countAsync(String queryString, String filterQuery);
+
+	/**
+	 * @see ISolrClient#realTimeGet(String)
+	 */
+	Future<IResult> realTimeGetAsync(String locator);
+
+	/**
+	 * @see ISolrClient#addData(Map)
+	 */
+	Future<IResult> addDataAsync(Map<String,Object> fields);
+
+	/**
+	 * @see ISolrClient#addData(Collection)
+	 */
+	Future<IResult> addDataAsync(Collection<Map<String,Object>> documents);
+
+	/**
+	 * @see ISolrClient#partialUpdateData(Map)
+	 */
+	Future<IResult> partialUpdateDataAsync(Map<String,Object> fields);
+
+	/**
+	 * @see ISolrClient#deleteByLocator(String)
+	 */
+	Future<IResult> deleteByLocatorAsync(String locator);
+
+	/**
+	 * Run other work, e.g. a blocking composite call, on the same threads
+	 * @param task
+	 * @return
+	 */
+	Future<IResult> submit(Callable<IResult> task);
+
+	/**
+	 * Stop taking calls; those already submitted still run
+	 */
+	void shutDown();
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.api;
+
+import org.topicquests.solr.SolrEnvironment;
+
+/**
+ * <p>Several processes (agents) can share one Solr, each with its own node cache.
+ * After a write, a process publishes the locators it changed; every other process
+ * which shares the same broadcaster evicts them.</p>
+ * <p>Publishers do not receive their own invalidations.</p>
+ * <p>Plug-in swappable by way of the <code>InvalidationBroadcaster</code> property</p>
+ * @author park
+ *
+ */
+public interface IInvalidationBroadcaster {
+
+	/**
+	 * @param environment
+	 * @throws Exception
+	 */
+	void init(SolrEnvironment environment) throws Exception;
+	
+	void addListener(IInvalidationListener listener);
+	
+	/**
+	 * Tell peers that the node identified by <code>locator</code> has changed
+	 * @param locator
+	 */
+	void publish(String locator);
+	
+	void shutDown();
+}
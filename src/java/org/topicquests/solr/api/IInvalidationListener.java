@@ -0,0 +1,31 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.api;
+
+/**
+ * Receives node cache invalidations published by other processes
+ * @author park
+ *
+ */
+public interface IInvalidationListener {
+
+	/**
+	 * The node identified by <code>locator</code> has changed elsewhere;
+	 * drop any cached copy
+	 * @param locator
+	 */
+	void invalidate(String locator);
+}
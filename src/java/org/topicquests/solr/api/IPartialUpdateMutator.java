@@ -0,0 +1,36 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.api;
+
+import java.util.Map;
+
+/**
+ * <p>Computes a partial update from the current state of a document.</p>
+ * <p>Used with optimistic concurrency: when another process changes the
+ * document first, the document is fetched again and the mutator
+ * is asked again, so it must not have side effects</p>
+ * @author park
+ *
+ */
+public interface IPartialUpdateMutator {
+
+	/**
+	 * @param current the latest stored fields; <code>null</code> if there is no such document
+	 * @return an atomic update map such as <code>{key={add=value}}</code>, without
+	 * locator or version; <code>null</code> if there is nothing to change
+	 */
+	Map<String,Object> mutate(Map<String,Object> current);
+}
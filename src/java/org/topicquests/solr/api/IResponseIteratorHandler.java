@@ -19,21 +19,29 @@ import org.topicquests.common.api.IResult;
 
 /**
  * @author park
- * Just an idea, yet to be developed; the idea is to iterate
- * along long sequences in Solr where you can only fetch a limited
- * number at a time
+ * Receives the results of a streamed query, see
+ * {@link ISolrDataProvider#streamQuery}, as they are fetched, rather than
+ * iterating along long sequences in Solr one fetch at a time
  */
 public interface IResponseIteratorHandler {
+	/** returned to stop the stream */
+	public static final int CANCEL = -1;
 
 	/**
 	 * <p>A SolrResponseIterator is a kind of query response iterator.
 	 * It will continue to fetch results from a query that returns blocks
 	 * of results</p>
 	 * <p><code>response</code> will contain <code>null</code> when nothing
-	 * is available (end of query), or it will contain an instance of {@link SolrDocumentList}
-	 * when data is available</p>
+	 * is available (end of query), or, when data is available, a page:
+	 * a {@link java.util.List} of {@link org.topicquests.model.api.INode};
+	 * or, when streaming by document, one {@link org.topicquests.model.api.INode}.
+	 * If fetching fails, the end carries the error string</p>
 	 * <p>The <code>IResponseIteratorHandler must deal with each batch of hits</p>
+	 * <p>Called on a pool thread, never on two threads at once for one stream</p>
 	 * @param response
+	 * @return how many more pages (or documents) it wants beyond those it has
+	 *  asked for so far: 0 to pause until {@link ISolrResultStream#request(int)},
+	 *  or {@link #CANCEL}; ignored at the end
 	 */
-	void handleSolrIteratorResponse(IResult response);
+	int handleSolrIteratorResponse(IResult response);
 }
@@ -26,7 +26,16 @@ import org.topicquests.common.api.IResult;
  *
  */
 public interface ISolrClient {
+	/** HTTP status Solr returns when a <code>_version_</code> does not match */
+	public static final int VERSION_CONFLICT = 409;
 
+	/**
+	 * Hand over the configuration properties, e.g. the commit policy read by
+	 * {@link org.topicquests.solr.CommitManager}; called before <code>init</code>
+	 * @param properties
+	 */
+	void setConfiguration(Map<String,Object> properties);
+	
 	/**
 	 * Initialize: make SolrClient a config property to boot
 	 * with <code>Class.forName</code>
@@ -50,6 +59,35 @@ public interface ISolrClient {
 	 */
 	 IResult runQuery(String queryString, int start, int count);
 	 
+	/**
+	 * Run a query returning only <code>fields</code>
+	 * @param queryString
+	 * @param start
+	 * @param count
+	 * @param fields <code>null</code> means all stored fields
+	 * @return
+	 */
+	 IResult runQuery(String queryString, int start, int count, String [] fields);
+	 
+	/**
+	 * Count the documents which match, without fetching any (<code>rows=0</code>)
+	 * @param queryString
+	 * @param filterQuery can be <code>null</code>
+	 * @return a <code>Long</code>
+	 */
+	 IResult count(String queryString, String filterQuery);
+	 
+	/**
+	 * Facet counts of <code>field</code> over the documents which match, without fetching any
+	 * @param queryString
+	 * @param filterQuery can be <code>null</code>
+	 * @param field
+	 * @param limit most frequent values to return; <code>-1</code> means all
+	 * @param minCount
+	 * @return a <code>Map<String,Long></code>, most frequent first
+	 */
+	 IResult facet(String queryString, String filterQuery, String field, int limit, int minCount);
+	 
 	/**
 	 * Update has the effect of removing then replacing a document
 	 * May have to deal with _version_ field and optimistic locking
@@ -68,6 +106,24 @@ public interface ISolrClient {
 	  */
 	 IResult partialUpdateData(Map<String,Object>fields);
 	 
+	 /**
+	  * <p>Fetch the latest version of a document by way of the <code>/get</code>
+	  * (real-time get) handler; sees updates which are not yet committed</p>
+	  * <p>If <code>fields</code> carries <code>_version_</code>, Solr rejects the update
+	  * when the document has changed since; the result object is then
+	  * {@link #VERSION_CONFLICT}</p>
+	  * @param locator
+	  * @return a SolrDocument, or <code>null</code> if there is no such document
+	  */
+	 IResult realTimeGet(String locator);
+	 
+	 /**
+	  * <code>true</code> if a <code>{!join}</code> query sees every document it
+	  * joins to; not so when documents are spread across shards
+	  * @return
+	  */
+	 boolean supportsJoin();
+	 
 	/**
 	 * Removes an entire document //TODO needs testing
 	 * @param locator
@@ -107,6 +163,13 @@ public interface ISolrClient {
 	 */
 	 IResult getByProxyLocator(String locator, int start, int count);
 	 
+	 /**
+	  * Durability barrier: hard commit everything sent so far; updates are
+	  * otherwise committed by the client's {@link org.topicquests.solr.CommitManager}
+	  * @return
+	  */
+	 IResult flush();
+	 
 	 /**
 	  * Shutdown the Solr server
 	  */
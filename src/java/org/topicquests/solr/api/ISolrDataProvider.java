@@ -15,11 +15,20 @@
  */
 package org.topicquests.solr.api;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
 
 import org.topicquests.common.api.IResult;
 import org.topicquests.model.api.IDataProvider;
+import org.topicquests.model.api.IMergeImplementation;
+import org.topicquests.model.api.IMergeQueue;
+import org.topicquests.model.api.INode;
 import org.topicquests.solr.Solr3Client;
+import org.topicquests.solr.cache.SignatureBloomFilter;
+import org.topicquests.solr.cache.TupleAdjacencyIndex;
+import org.topicquests.solr.suggest.LabelSuggester;
 /**
  * @author park
  *
@@ -39,5 +48,121 @@ public interface ISolrDataProvider extends IDataProvider {
 	  * @return
 	  */
 	 IResult partialUpdateData(Map<String,Object>fields);
+	 
+	 /**
+	  * <p>Partial update computed by <code>mutator</code> from the latest document.</p>
+	  * <p>If optimistic concurrency is on, the update carries the <code>_version_</code>
+	  * of that document; on a conflict the document is fetched again and
+	  * <code>mutator</code> reapplied, a bounded number of times</p>
+	  * @param locator
+	  * @param mutator
+	  * @return
+	  */
+	 IResult partialUpdateData(String locator, IPartialUpdateMutator mutator);
+	 
+	 /**
+	  * @return <code>true</code> if partial updates should carry <code>_version_</code>
+	  */
+	 boolean useOptimisticConcurrency();
+	 
+	 /**
+	  * Put <code>node</code> in the node cache, e.g. during warm-up;
+	  * private nodes are ignored
+	  * @param node
+	  */
+	 void addToCache(INode node);
+	 
+	 /**
+	  * Fetch many nodes by locator: from the node cache where possible,
+	  * the rest in batched queries
+	  * @param locators
+	  * @param credentials
+	  * @return <code>List<INode></code> in the order of <code>locators</code>;
+	  *  nodes not found or not visible are left out
+	  */
+	 IResult getNodes(List<String> locators, Set<String> credentials);
+	 
+	 /**
+	  * @return <code>null</code> unless <code>UseTupleIndex</code> is on
+	  */
+	 TupleAdjacencyIndex getTupleIndex();
+	 
+	 /**
+	  * @return <code>null</code> unless <code>UseLabelSuggester</code> is on
+	  */
+	 LabelSuggester getLabelSuggester();
+	 
+	 /**
+	  * @return <code>null</code> if <code>TupleSignatureFilterSize</code> is 0
+	  */
+	 SignatureBloomFilter getSignatureFilter();
+	 
+	 /**
+	  * As {@link #setMergeBean(IMergeImplementation)}, with <code>queue</code> in
+	  * front of <code>merger</code>: the node model's <code>assertMerge</code>
+	  * then goes through the queue
+	  * @param merger
+	  * @param queue can be <code>null</code>
+	  */
+	 void setMergeBean(IMergeImplementation merger, IMergeQueue queue);
+	 
+	 /**
+	  * Durability barrier: returns once everything written so far is hard committed.
+	  * Not needed for visibility; reads see writes by way of real-time get
+	  * and the write overlay
+	  * @return
+	  */
+	 IResult flush();
+	 
+	 /**
+	  * @return the non-blocking counterpart of {@link #getSolrClient()}
+	  */
+	 IAsyncSolrClient getAsyncSolrClient();
+	 
+	 /**
+	  * <code>getNode</code> which returns at once; a cached node comes back
+	  * as a completed future
+	  * @param locator
+	  * @param credentials
+	  * @return
+	  */
+	 Future<IResult> getNodeAsync(String locator, Set<String> credentials);
+	 
+	 /**
+	  * <code>runQuery</code> which returns at once
+	  * @param queryString
+	  * @param start
+	  * @param count
+	  * @param credentials
+	  * @return
+	  */
+	 Future<IResult> runQueryAsync(String queryString, int start, int count, Set<String> credentials);
+	 
+	 /**
+	  * <code>runQuery</code> with a projection, which returns at once
+	  * @param queryString
+	  * @param start
+	  * @param count
+	  * @param projection see {@link org.topicquests.solr.FieldProjection}
+	  * @param credentials
+	  * @return
+	  */
+	 Future<IResult> runQueryAsync(String queryString, int start, int count, String projection, Set<String> credentials);
+
+	 /**
+	  * <p>Push the results of <code>queryString</code> to <code>handler</code>,
+	  * fetching pages on the async pool as the handler asks for them</p>
+	  * <p>Bypasses the caches and does not see writes Solr has yet to make searchable</p>
+	  * @param queryString
+	  * @param pageSize documents per fetch
+	  * @param projection see {@link org.topicquests.solr.FieldProjection}
+	  * @param credentials
+	  * @param byDocument <code>true</code> to deliver one {@link INode} at a time,
+	  *  else a <code>List</code> of them per page
+	  * @param handler starts with a demand of one
+	  * @return
+	  */
+	 ISolrResultStream streamQuery(String queryString, int pageSize, String projection, Set<String> credentials,
+			 boolean byDocument, IResponseIteratorHandler handler);
 
 }
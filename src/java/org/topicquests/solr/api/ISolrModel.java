@@ -17,6 +17,7 @@ package org.topicquests.solr.api;
 
 import java.util.Set;
 
+import org.topicquests.common.api.IResult;
 import org.topicquests.model.api.INode;
 import org.topicquests.model.api.ITuple;
 
@@ -79,4 +80,41 @@ public interface ISolrModel {
 	 */
 	ISolrQueryIterator listNodeSubclasses(String superClassLocator, int count, Set<String> credentials);
 	
+	/**
+	 * <p>Type-ahead: labels for the given <code>language</code> which begin
+	 * with <code>prefix</code>, ignoring case, best connected nodes first</p>
+	 * <p>Served from memory by the label suggester if it is on and built;
+	 * otherwise by a prefix query</p>
+	 * @param prefix
+	 * @param language
+	 * @param count
+	 * @param credentials
+	 * @return <code>List<LabelSuggestion></code>
+	 */
+	IResult suggestLabels(String prefix, String language, int count, Set<String> credentials);
+	
+	/**
+	 * Number of nodes, not tuples, per <code>instanceOf</code> type
+	 * @param limit <code>-1</code> means all types
+	 * @param credentials
+	 * @return <code>Map<String,Long></code>
+	 */
+	IResult countInstancesByType(int limit, Set<String> credentials);
+	
+	/**
+	 * Number of tuples per relation type
+	 * @param limit <code>-1</code> means all relation types
+	 * @param credentials
+	 * @return <code>Map<String,Long></code>
+	 */
+	IResult countTuplesByRelation(int limit, Set<String> credentials);
+	
+	/**
+	 * Number of nodes and tuples per <code>creatorId</code>
+	 * @param limit <code>-1</code> means all creators
+	 * @param credentials
+	 * @return <code>Map<String,Long></code>
+	 */
+	IResult countNodesByCreator(int limit, Set<String> credentials);
+	
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.api;
+
+/**
+ * <p>A streamed query in progress, as returned by {@link ISolrDataProvider#streamQuery}</p>
+ * <p>Results are pushed to an {@link IResponseIteratorHandler} only while it
+ * has outstanding demand: one page or document to begin with, then whatever
+ * the handler returns, plus what is given to {@link #request(int)}</p>
+ * @author park
+ *
+ */
+public interface ISolrResultStream {
+
+	/**
+	 * Ask for <code>n</code> more pages (or documents)
+	 * @param n
+	 */
+	void request(int n);
+
+	/**
+	 * Stop: nothing more is delivered, not even the end
+	 */
+	void cancel();
+
+	/**
+	 * @return <code>true</code> once the end was delivered, or after a cancel
+	 */
+	boolean isDone();
+
+	/**
+	 * Block until {@link #isDone()}
+	 * @throws InterruptedException
+	 */
+	void await() throws InterruptedException;
+
+	/**
+	 * @return pages (or documents) delivered so far
+	 */
+	long getDelivered();
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.cache;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.topicquests.solr.SolrEnvironment;
+import org.topicquests.solr.api.IInvalidationBroadcaster;
+import org.topicquests.solr.api.IInvalidationListener;
+import org.topicquests.util.LoggingPlatform;
+
+/**
+ * <p>Listener bookkeeping shared by {@link IInvalidationBroadcaster} implementations</p>
+ * <p>Updates are sent with <code>commitWithin</code>, so a peer which
+ * re-reads a node right after an invalidation can cache the old version again.
+ * Each invalidation is therefore delivered twice: at once, and again after
+ * <code>InvalidationRepeatDelay</code> milliseconds</p>
+ * @author park
+ *
+ */
+public abstract class AbstractInvalidationBroadcaster implements IInvalidationBroadcaster {
+	protected LoggingPlatform log = LoggingPlatform.getInstance();
+	protected SolrEnvironment environment;
+	private List<IInvalidationListener> listeners = new CopyOnWriteArrayList<IInvalidationListener>();
+	/** identifies this process, so that it can ignore its own messages */
+	protected final String sourceId = UUID.randomUUID().toString();
+	private long repeatDelay = 1500;
+	private ScheduledExecutorService repeater;
+
+	@Override
+	public void init(SolrEnvironment env) throws Exception {
+		environment = env;
+		String x = env.getStringProperty("InvalidationRepeatDelay");
+		if (x != null)
+			repeatDelay = Long.parseLong(x);
+		repeater = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "InvalidationRepeater");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	@Override
+	public void addListener(IInvalidationListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Hand an invalidation from a peer to all listeners
+	 * @param locator
+	 */
+	protected void deliver(final String locator) {
+		notifyListeners(locator);
+		if (repeatDelay > 0 && repeater != null) {
+			repeater.schedule(new Runnable() {
+				@Override
+				public void run() {
+					notifyListeners(locator);
+				}
+			}, repeatDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	void notifyListeners(String locator) {
+		Iterator<IInvalidationListener>itr = listeners.iterator();
+		while (itr.hasNext()) {
+			try {
+				itr.next().invalidate(locator);
+			} catch (Exception e) {
+				log.logError("InvalidationBroadcaster "+e.getMessage(), e);
+			}
+		}
+	}
+
+	@Override
+	public void shutDown() {
+		if (repeater != null)
+			repeater.shutdownNow();
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.cache;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import org.topicquests.common.ResultPojo;
+import org.topicquests.common.api.IResult;
+import org.topicquests.common.api.ITopicQuestsOntology;
+import org.topicquests.model.api.INode;
+import org.topicquests.solr.QueryUtil;
+import org.topicquests.solr.SolrEnvironment;
+import org.topicquests.solr.api.ISolrDataProvider;
+
+/**
+ * <p>A startup task which preloads the node cache with:
+ * <ul><li>the type hierarchy: every node which is, transitively, <code>subOf</code>
+ *  {@link ITopicQuestsOntology#TYPE_TYPE}, walked one level at a time</li>
+ * <li>the locators in the last {@link HotLocatorTracker} snapshot</li></ul></p>
+ * <p>Each level is fetched in pages of batched <code>OR</code> queries
+ * rather than one query per node</p>
+ * @author park
+ *
+ */
+public class CacheWarmer implements Callable<IResult> {
+	private SolrEnvironment environment;
+	private ISolrDataProvider database;
+	private HotLocatorTracker tracker;
+	/** locators per query */
+	private static final int BATCH_SIZE = 50;
+	/** rows per page */
+	private static final int PAGE_SIZE = 200;
+
+	public CacheWarmer(SolrEnvironment env, HotLocatorTracker t) {
+		environment = env;
+		database = env.getDataProvider();
+		tracker = t;
+	}
+
+	@Override
+	public IResult call() throws Exception {
+		IResult result = new ResultPojo();
+		long startTime = System.currentTimeMillis();
+		int count = warmTypeHierarchy(result);
+		environment.record("CacheWarmer types "+count+" "+(System.currentTimeMillis()-startTime));
+		if (tracker != null && tracker.isEnabled()) {
+			List<String> hot = tracker.loadSnapshot();
+			count = fetch(ITopicQuestsOntology.LOCATOR_PROPERTY, hot, null, result);
+			environment.record("CacheWarmer hot locators "+count+" of "+hot.size());
+			tracker.startSnapshots();
+		}
+		return result;
+	}
+
+	/**
+	 * Breadth-first down the <code>subOf</code> hierarchy
+	 * @param result
+	 * @return number of nodes cached
+	 */
+	int warmTypeHierarchy(IResult result) {
+		Set<String> seen = new HashSet<String>();
+		List<String> level = new ArrayList<String>();
+		level.add(ITopicQuestsOntology.TYPE_TYPE);
+		seen.add(ITopicQuestsOntology.TYPE_TYPE);
+		int count = fetch(ITopicQuestsOntology.LOCATOR_PROPERTY, level, null, result);
+		List<String> next;
+		while (!level.isEmpty()) {
+			next = new ArrayList<String>();
+			count += fetch(ITopicQuestsOntology.SUBCLASS_OF_PROPERTY_TYPE, level, next, result);
+			level = new ArrayList<String>();
+			Iterator<String>itr = next.iterator();
+			String lox;
+			while (itr.hasNext()) {
+				lox = itr.next();
+				if (seen.add(lox))
+					level.add(lox);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Fetch all nodes whose <code>field</code> has any of <code>values</code> and cache them
+	 * @param field
+	 * @param values
+	 * @param found if not <code>null</code>, collects the locators fetched
+	 * @param result collects errors
+	 * @return number of nodes cached
+	 */
+	int fetch(String field, List<String> values, List<String> found, IResult result) {
+		int count = 0;
+		int len = values.size();
+		String query;
+		IResult r;
+		List<INode> nodes;
+		INode n;
+		int start;
+		for (int i=0;i<len;i+=BATCH_SIZE) {
+			query = QueryUtil.orQuery(field, values.subList(i, Math.min(len, i+BATCH_SIZE)));
+			start = 0;
+			while (true) {
+				//null credentials: only public nodes are cached anyway
+				r = database.runQuery(query, start, PAGE_SIZE, null);
+				if (r.hasError()) {
+					result.addErrorString(r.getErrorString());
+					break;
+				}
+				nodes = (List<INode>)r.getResultObject();
+				Iterator<INode>itr = nodes.iterator();
+				while (itr.hasNext()) {
+					n = itr.next();
+					database.addToCache(n);
+					if (found != null)
+						found.add(n.getLocator());
+					count++;
+				}
+				//private nodes are filtered out of a page, so only an empty page means done
+				if (nodes.isEmpty())
+					break;
+				start += PAGE_SIZE;
+			}
+		}
+		return count;
+	}
+}
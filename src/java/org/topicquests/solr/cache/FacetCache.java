@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.cache;
+
+import java.util.*;
+
+import org.nex.util.LRUCache;
+
+/**
+ * <p>Caches facet counts until the next write; see {@link WriteGeneration}</p>
+ * @author park
+ *
+ */
+public class FacetCache {
+	/** internally synchronized */
+	private LRUCache cache;
+	private WriteGeneration generation;
+
+	public FacetCache(int size, WriteGeneration g) {
+		cache = new LRUCache(size);
+		generation = g;
+	}
+
+	/**
+	 * @param key
+	 * @return <code>null</code> if absent or stale
+	 */
+	public Map<String,Long> get(String key) {
+		Entry e = (Entry)cache.get(key);
+		if (e == null || e.generation != generation.get())
+			return null;
+		return e.counts;
+	}
+
+	/**
+	 * @param key
+	 * @param gen the generation when the query was sent
+	 * @param counts
+	 */
+	public void put(String key, long gen, Map<String,Long> counts) {
+		if (gen == generation.get())
+			cache.add(key, new Entry(gen, Collections.unmodifiableMap(counts)));
+	}
+
+	/**
+	 * @param parts
+	 * @param credentials can be <code>null</code>
+	 * @return
+	 */
+	public static String makeKey(String parts, Set<String> credentials) {
+		if (credentials == null || credentials.isEmpty())
+			return parts;
+		return parts+"|"+new TreeSet<String>(credentials);
+	}
+
+	class Entry {
+		long generation;
+		Map<String,Long> counts;
+
+		Entry(long g, Map<String,Long> c) {
+			generation = g;
+			counts = c;
+		}
+	}
+}
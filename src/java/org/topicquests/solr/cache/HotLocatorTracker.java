@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.cache;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.topicquests.solr.SolrEnvironment;
+import org.topicquests.util.LoggingPlatform;
+
+/**
+ * <p>Counts <code>getNode</code> accesses per locator and periodically
+ * writes the most frequently accessed locators to a local file, one per line,
+ * so that {@link CacheWarmer} can preload them after a restart</p>
+ * <p>Counts are halved at each snapshot so that the list follows
+ * what is hot now rather than what was hot last week</p>
+ * @author park
+ *
+ */
+public class HotLocatorTracker {
+	private LoggingPlatform log = LoggingPlatform.getInstance();
+	private ConcurrentHashMap<String,AtomicInteger> counts = new ConcurrentHashMap<String,AtomicInteger>();
+	/** <code>null</code> means tracking is off */
+	private File snapshotFile = null;
+	private int maxLocators = 1000;
+	/** bound on the number of locators we count between snapshots */
+	private int maxTracked;
+	/** milliseconds */
+	private long snapshotInterval = 300000;
+	private Timer timer = null;
+
+	/**
+	 * Configured from <code>HotLocatorFile</code>, <code>HotLocatorCount</code>
+	 * and <code>HotLocatorSnapshotInterval</code> (seconds)
+	 * @param env
+	 */
+	public HotLocatorTracker(SolrEnvironment env) {
+		String fx = env.getStringProperty("HotLocatorFile");
+		if (fx != null && !fx.equals(""))
+			snapshotFile = new File(fx);
+		String x = env.getStringProperty("HotLocatorCount");
+		if (x != null)
+			maxLocators = Integer.parseInt(x);
+		x = env.getStringProperty("HotLocatorSnapshotInterval");
+		if (x != null)
+			snapshotInterval = Long.parseLong(x)*1000;
+		maxTracked = maxLocators * 10;
+	}
+
+	public boolean isEnabled() {
+		return snapshotFile != null;
+	}
+
+	/**
+	 * Called on each <code>getNode</code>
+	 * @param locator
+	 */
+	public void recordAccess(String locator) {
+		if (snapshotFile == null || locator == null)
+			return;
+		AtomicInteger c = counts.get(locator);
+		if (c == null) {
+			if (counts.size() >= maxTracked)
+				return;
+			c = new AtomicInteger();
+			AtomicInteger old = counts.putIfAbsent(locator, c);
+			if (old != null)
+				c = old;
+		}
+		c.incrementAndGet();
+	}
+
+	/**
+	 * Read the last snapshot
+	 * @return does not return <code>null</code>
+	 */
+	public List<String> loadSnapshot() {
+		List<String> result = new ArrayList<String>();
+		if (snapshotFile == null || !snapshotFile.exists())
+			return result;
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new InputStreamReader(new FileInputStream(snapshotFile), "UTF-8"));
+			String line;
+			while ((line = in.readLine()) != null && result.size() < maxLocators) {
+				line = line.trim();
+				if (!line.equals(""))
+					result.add(line);
+			}
+		} catch (Exception e) {
+			log.logError("HotLocatorTracker.loadSnapshot "+e.getMessage(), e);
+		} finally {
+			if (in != null) {
+				try { in.close(); } catch (Exception x) {}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Write the hottest locators, then decay all counts
+	 */
+	public synchronized void snapshot() {
+		if (snapshotFile == null || counts.isEmpty())
+			return;
+		List<Map.Entry<String,AtomicInteger>> entries =
+				new ArrayList<Map.Entry<String,AtomicInteger>>(counts.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String,AtomicInteger>>() {
+			@Override
+			public int compare(Map.Entry<String,AtomicInteger> a, Map.Entry<String,AtomicInteger> b) {
+				return b.getValue().get() - a.getValue().get();
+			}
+		});
+		File temp = new File(snapshotFile.getPath()+".tmp");
+		if (snapshotFile.getParentFile() != null)
+			snapshotFile.getParentFile().mkdirs();
+		PrintWriter out = null;
+		try {
+			out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+			int len = Math.min(maxLocators, entries.size());
+			for (int i=0;i<len;i++)
+				out.println(entries.get(i).getKey());
+			out.flush();
+			out.close();
+			out = null;
+			//rename is not atomic over an existing file everywhere
+			snapshotFile.delete();
+			if (!temp.renameTo(snapshotFile))
+				log.logError("HotLocatorTracker.snapshot cannot rename "+temp, null);
+		} catch (Exception e) {
+			log.logError("HotLocatorTracker.snapshot "+e.getMessage(), e);
+		} finally {
+			if (out != null)
+				out.close();
+		}
+		Iterator<Map.Entry<String,AtomicInteger>>itr = counts.entrySet().iterator();
+		Map.Entry<String,AtomicInteger> e;
+		int v;
+		while (itr.hasNext()) {
+			e = itr.next();
+			v = e.getValue().get() / 2;
+			if (v == 0)
+				itr.remove();
+			else
+				e.getValue().set(v);
+		}
+	}
+
+	/**
+	 * Begin periodic snapshots; called once the last snapshot has been loaded
+	 */
+	public synchronized void startSnapshots() {
+		if (snapshotFile == null || timer != null)
+			return;
+		timer = new Timer("HotLocatorTracker", true);
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				snapshot();
+			}
+		}, snapshotInterval, snapshotInterval);
+	}
+
+	/**
+	 * Stop snapshots and take a final one
+	 */
+	public synchronized void shutDown() {
+		if (timer != null) {
+			timer.cancel();
+			timer = null;
+			snapshot();
+		}
+	}
+}
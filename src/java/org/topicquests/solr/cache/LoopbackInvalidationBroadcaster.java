@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.cache;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.topicquests.solr.SolrEnvironment;
+
+/**
+ * <p>Delivers invalidations to every other instance in this JVM, synchronously.
+ * The default; also useful for testing several SolrEnvironments in one process</p>
+ * @author park
+ *
+ */
+public class LoopbackInvalidationBroadcaster extends AbstractInvalidationBroadcaster {
+	private static List<LoopbackInvalidationBroadcaster> peers = 
+			new CopyOnWriteArrayList<LoopbackInvalidationBroadcaster>();
+
+	@Override
+	public void init(SolrEnvironment env) throws Exception {
+		super.init(env);
+		peers.add(this);
+	}
+
+	@Override
+	public void publish(String locator) {
+		Iterator<LoopbackInvalidationBroadcaster>itr = peers.iterator();
+		LoopbackInvalidationBroadcaster p;
+		while (itr.hasNext()) {
+			p = itr.next();
+			if (p != this)
+				p.deliver(locator);
+		}
+	}
+
+	@Override
+	public void shutDown() {
+		peers.remove(this);
+		super.shutDown();
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.cache;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+
+import org.topicquests.solr.SolrEnvironment;
+
+/**
+ * <p>Sends invalidations as UDP multicast datagrams, one locator per datagram:<br/>
+ * <code>TQINV\n&lt;sourceId&gt;\n&lt;locator&gt;</code></p>
+ * <p>Configured with <code>InvalidationGroup</code> and <code>InvalidationPort</code>.
+ * Delivery is best effort: a lost datagram means a peer serves a stale node
+ * until it falls out of its cache</p>
+ * @author park
+ *
+ */
+public class MulticastInvalidationBroadcaster extends AbstractInvalidationBroadcaster {
+	private static final String MAGIC = "TQINV";
+	private static final int MAX_PACKET = 1400;
+	private MulticastSocket socket;
+	private InetAddress group;
+	private int port = 4446;
+	private Thread receiver;
+	private volatile boolean isRunning = true;
+
+	@Override
+	public void init(SolrEnvironment env) throws Exception {
+		super.init(env);
+		String g = env.getStringProperty("InvalidationGroup");
+		if (g == null)
+			g = "230.0.0.1";
+		String x = env.getStringProperty("InvalidationPort");
+		if (x != null)
+			port = Integer.parseInt(x);
+		group = InetAddress.getByName(g);
+		socket = new MulticastSocket(port);
+		socket.joinGroup(group);
+		receiver = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				receive();
+			}
+		}, "MulticastInvalidationReceiver");
+		receiver.setDaemon(true);
+		receiver.start();
+		environment.logDebug("MulticastInvalidationBroadcaster "+g+":"+port);
+	}
+
+	@Override
+	public void publish(String locator) {
+		try {
+			byte [] buf = (MAGIC+"\n"+sourceId+"\n"+locator).getBytes("UTF-8");
+			if (buf.length > MAX_PACKET) {
+				log.logError("MulticastInvalidationBroadcaster locator too long "+locator, null);
+				return;
+			}
+			socket.send(new DatagramPacket(buf, buf.length, group, port));
+		} catch (Exception e) {
+			log.logError("MulticastInvalidationBroadcaster.publish "+e.getMessage(), e);
+		}
+	}
+
+	void receive() {
+		byte [] buf = new byte[MAX_PACKET];
+		DatagramPacket packet;
+		String msg;
+		String [] parts;
+		while (isRunning) {
+			try {
+				packet = new DatagramPacket(buf, buf.length);
+				socket.receive(packet);
+				msg = new String(packet.getData(), 0, packet.getLength(), "UTF-8");
+				parts = msg.split("\n", 3);
+				if (parts.length == 3 && parts[0].equals(MAGIC) && !parts[1].equals(sourceId))
+					deliver(parts[2]);
+			} catch (Exception e) {
+				if (isRunning)
+					log.logError("MulticastInvalidationBroadcaster.receive "+e.getMessage(), e);
+			}
+		}
+	}
+
+	@Override
+	public void shutDown() {
+		isRunning = false;
+		try {
+			socket.leaveGroup(group);
+		} catch (Exception e) {}
+		socket.close();
+		super.shutDown();
+	}
+}
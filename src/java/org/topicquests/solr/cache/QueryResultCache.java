@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.cache;
+
+import java.util.*;
+
+import org.nex.util.LRUCache;
+
+/**
+ * <p>Caches the locators answered by a query page until the next write;
+ * the nodes themselves are resolved through the node cache</p>
+ * @author park
+ *
+ */
+public class QueryResultCache {
+	/** internally synchronized */
+	private LRUCache cache;
+	private WriteGeneration generation;
+
+	public QueryResultCache(int size, WriteGeneration g) {
+		cache = new LRUCache(size);
+		generation = g;
+	}
+
+	/**
+	 * @param queryString
+	 * @param start
+	 * @param count
+	 * @param credentials can be <code>null</code>
+	 * @return
+	 */
+	public static String makeKey(String queryString, int start, int count, Set<String> credentials) {
+		return FacetCache.makeKey(queryString+"|"+start+"|"+count, credentials);
+	}
+
+	/**
+	 * @param key
+	 * @return <code>null</code> if absent or stale
+	 */
+	public List<String> get(String key) {
+		Entry e = (Entry)cache.get(key);
+		if (e == null || e.generation != generation.get())
+			return null;
+		return e.locators;
+	}
+
+	/**
+	 * @param key
+	 * @param gen the generation when the query was sent
+	 * @param locators
+	 */
+	public void put(String key, long gen, List<String> locators) {
+		if (gen == generation.get())
+			cache.add(key, new Entry(gen, Collections.unmodifiableList(locators)));
+	}
+
+	class Entry {
+		long generation;
+		List<String> locators;
+
+		Entry(long g, List<String> l) {
+			generation = g;
+			locators = l;
+		}
+	}
+}
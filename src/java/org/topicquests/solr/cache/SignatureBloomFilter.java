@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.solr.common.SolrDocumentList;
+import org.topicquests.common.ResultPojo;
+import org.topicquests.common.api.IResult;
+import org.topicquests.common.api.ITopicQuestsOntology;
+import org.topicquests.solr.api.ISolrClient;
+import org.topicquests.util.LoggingPlatform;
+
+/**
+ * <p>A Bloom filter of tuple signatures, so that asking whether a tuple
+ * already exists can usually be answered "no" without a query.</p>
+ * <p>Until it is built, and for every signature it may contain, the caller
+ * must still ask Solr. Removed tuples stay in the filter; that only costs a query.</p>
+ * <p>After the build it learns only this process's writes, so a tuple written
+ * by a peer would be reported missing: use it only when one process writes tuples</p>
+ * @author park
+ *
+ */
+public class SignatureBloomFilter {
+	private LoggingPlatform log = LoggingPlatform.getInstance();
+	private AtomicLongArray bits;
+	/** number of bits */
+	private int size;
+	private int hashCount;
+	private volatile boolean isReady = false;
+	private static final int PAGE_SIZE = 5000;
+
+	/**
+	 * @param expectedCount number of signatures expected
+	 * @param falsePositiveRate e.g. <code>0.01</code>
+	 */
+	public SignatureBloomFilter(int expectedCount, double falsePositiveRate) {
+		double ln2 = Math.log(2);
+		long m = (long)Math.ceil(-expectedCount * Math.log(falsePositiveRate) / (ln2 * ln2));
+		size = (int)Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+		hashCount = Math.max(1, (int)Math.round((double)size / expectedCount * ln2));
+		bits = new AtomicLongArray((size + 63) / 64);
+	}
+
+	public boolean isReady() {
+		return isReady;
+	}
+
+	/**
+	 * Page through the signatures of all tuples
+	 * @param client
+	 * @return
+	 */
+	public IResult build(ISolrClient client) {
+		IResult result = new ResultPojo();
+		String [] fields = {ITopicQuestsOntology.TUPLE_SIGNATURE_PROPERTY};
+		String query = ITopicQuestsOntology.TUPLE_SIGNATURE_PROPERTY+":*";
+		int start = 0;
+		int count = 0;
+		IResult r;
+		SolrDocumentList docs;
+		Object sig;
+		while (true) {
+			r = client.runQuery(query, start, PAGE_SIZE, fields);
+			if (r.hasError()) {
+				result.addErrorString(r.getErrorString());
+				return result; //not ready
+			}
+			docs = (SolrDocumentList)r.getResultObject();
+			if (docs == null || docs.isEmpty())
+				break;
+			for (int i=0;i<docs.size();i++) {
+				sig = docs.get(i).getFieldValue(ITopicQuestsOntology.TUPLE_SIGNATURE_PROPERTY);
+				if (sig != null) {
+					add(sig.toString());
+					count++;
+				}
+			}
+			start += docs.size();
+		}
+		isReady = true;
+		log.record("SignatureBloomFilter built "+count+" "+size+" "+hashCount);
+		return result;
+	}
+
+	public void add(String signature) {
+		long h = hash64(signature);
+		int h1 = (int)h;
+		int h2 = (int)(h >>> 32);
+		int b;
+		long mask;
+		long old;
+		for (int i=0;i<hashCount;i++) {
+			b = index(h1 + i * h2);
+			mask = 1L << (b & 63);
+			do {
+				old = bits.get(b >>> 6);
+				if ((old & mask) != 0)
+					break;
+			} while (!bits.compareAndSet(b >>> 6, old, old | mask));
+		}
+	}
+
+	/**
+	 * @param signature
+	 * @return <code>false</code> only if <code>signature</code> is certainly absent
+	 */
+	public boolean mightContain(String signature) {
+		if (!isReady)
+			return true;
+		long h = hash64(signature);
+		int h1 = (int)h;
+		int h2 = (int)(h >>> 32);
+		int b;
+		for (int i=0;i<hashCount;i++) {
+			b = index(h1 + i * h2);
+			if ((bits.get(b >>> 6) & (1L << (b & 63))) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	int index(int combined) {
+		return (combined & Integer.MAX_VALUE) % size;
+	}
+
+	/**
+	 * FNV-1a over the characters, then a final mix
+	 * @param s
+	 * @return
+	 */
+	long hash64(String s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i=0;i<s.length();i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		return h;
+	}
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.cache;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.solr.common.SolrDocumentList;
+import org.topicquests.common.ResultPojo;
+import org.topicquests.common.api.IResult;
+import org.topicquests.common.api.ITopicQuestsOntology;
+import org.topicquests.solr.FieldProjection;
+import org.topicquests.solr.api.ISolrClient;
+import org.topicquests.util.IntList;
+import org.topicquests.util.LoggingPlatform;
+
+/**
+ * <p>An in-memory index of which tuples each node is the subject or object of.</p>
+ * <p>Locators are interned to <code>int</code> ids; for each tuple we keep its
+ * subject, object, relation type and object type ids, and for each node its
+ * outgoing and incoming tuple ids, all in primitive arrays.</p>
+ * <p>The index knows nothing of credentials: it answers with tuple locators,
+ * which are then fetched subject to credentials. It is built by paging through
+ * every tuple document at startup, and kept current by the write paths in
+ * <code>SolrDataProvider</code>; until built, {@link #isReady()} is <code>false</code></p>
+ * <p>Changes made by peer processes reach the index only by way of the
+ * invalidation bus: a tuple the index knows is then read again, see
+ * {@link #refresh}, and dropped if deleted. Tuples created by a peer are not
+ * seen until the next build, so the index is meant for a single process
+ * writing to Solr</p>
+ * @author park
+ *
+ */
+public class TupleAdjacencyIndex {
+	private LoggingPlatform log = LoggingPlatform.getInstance();
+	private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	/** node, relation type and object type locators */
+	private Map<String,Integer> ids = new HashMap<String,Integer>();
+	private List<String> names = new ArrayList<String>();
+	private Map<String,Integer> tupleIds = new HashMap<String,Integer>();
+	private List<String> tupleNames = new ArrayList<String>();
+	/** by tuple id; -1 means none, e.g. a literal object */
+	private IntList tSubject = new IntList(1024);
+	private IntList tObject = new IntList(1024);
+	private IntList tRelation = new IntList(1024);
+	private IntList tObjectType = new IntList(1024);
+	/** by node id: tuple ids */
+	private List<IntList> outgoing = new ArrayList<IntList>();
+	private List<IntList> incoming = new ArrayList<IntList>();
+	private volatile boolean isReady = false;
+	private static final int PAGE_SIZE = 1000;
+
+	public boolean isReady() {
+		return isReady;
+	}
+
+	/**
+	 * Page through all tuple documents
+	 * @param client
+	 * @return
+	 */
+	public IResult build(ISolrClient client) {
+		IResult result = new ResultPojo();
+		String query = ITopicQuestsOntology.TUPLE_SUBJECT_PROPERTY+":*";
+		int start = 0;
+		IResult r;
+		SolrDocumentList docs;
+		long startTime = System.currentTimeMillis();
+		while (true) {
+			r = client.runQuery(query, start, PAGE_SIZE, FieldProjection.fields(FieldProjection.TUPLE_ENDPOINTS));
+			if (r.hasError()) {
+				result.addErrorString(r.getErrorString());
+				return result; //not ready
+			}
+			docs = (SolrDocumentList)r.getResultObject();
+			if (docs == null || docs.isEmpty())
+				break;
+			for (int i=0;i<docs.size();i++)
+				addTuple(docs.get(i));
+			start += docs.size();
+		}
+		isReady = true;
+		log.record("TupleAdjacencyIndex built "+tupleCount()+" "+(System.currentTimeMillis()-startTime));
+		return result;
+	}
+
+	public int tupleCount() {
+		lock.readLock().lock();
+		try {
+			return tupleNames.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Add or replace a tuple
+	 * @param props a tuple's fields
+	 */
+	public void addTuple(Map<String,Object> props) {
+		String lox = first(props.get(ITopicQuestsOntology.LOCATOR_PROPERTY));
+		String subject = first(props.get(ITopicQuestsOntology.TUPLE_SUBJECT_PROPERTY));
+		if (lox == null || subject == null)
+			return;
+		String object = first(props.get(ITopicQuestsOntology.TUPLE_OBJECT_PROPERTY));
+		String objectType = first(props.get(ITopicQuestsOntology.TUPLE_OBJECT_TYPE_PROPERTY));
+		String relation = first(props.get(ITopicQuestsOntology.INSTANCE_OF_PROPERTY_TYPE));
+		lock.writeLock().lock();
+		try {
+			int t = tupleId(lox);
+			unlink(t);
+			tSubject.set(t, id(subject));
+			tObject.set(t, isNodeType(objectType) ? id(object) : -1);
+			tRelation.set(t, relation == null ? -1 : id(relation));
+			tObjectType.set(t, objectType == null ? -1 : id(objectType));
+			link(t);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Apply a partial update, e.g. tuple surgery by the merge engine, if it
+	 * <code>set</code>s a tuple's subject or object
+	 * @param fields
+	 */
+	public void applyUpdate(Map<String,Object> fields) {
+		String lox = first(fields.get(ITopicQuestsOntology.LOCATOR_PROPERTY));
+		String subject = setValue(fields.get(ITopicQuestsOntology.TUPLE_SUBJECT_PROPERTY));
+		String object = setValue(fields.get(ITopicQuestsOntology.TUPLE_OBJECT_PROPERTY));
+		if (lox == null || (subject == null && object == null))
+			return;
+		lock.writeLock().lock();
+		try {
+			Integer t = tupleIds.get(lox);
+			if (t == null)
+				return; //not a tuple we know; build will find it
+			unlink(t);
+			if (subject != null)
+				tSubject.set(t, id(subject));
+			if (object != null && tObject.get(t) != -1)
+				tObject.set(t, id(object));
+			link(t);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Forget a deleted tuple
+	 * @param locator
+	 */
+	public void removeTuple(String locator) {
+		lock.writeLock().lock();
+		try {
+			Integer t = tupleIds.get(locator);
+			if (t == null)
+				return;
+			unlink(t);
+			tSubject.set(t, -1);
+			tObject.set(t, -1);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean containsTuple(String locator) {
+		lock.readLock().lock();
+		try {
+			Integer t = tupleIds.get(locator);
+			return t != null && tSubject.get(t) != -1;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Another process changed <code>locator</code>: if it is one of our tuples,
+	 * read it again, or drop it if it is gone
+	 * @param client
+	 * @param locator
+	 * @return
+	 */
+	public IResult refresh(ISolrClient client, String locator) {
+		if (!containsTuple(locator))
+			return new ResultPojo();
+		IResult result = client.realTimeGet(locator);
+		if (result.hasError())
+			return result;
+		Map<String,Object> doc = (Map<String,Object>)result.getResultObject();
+		if (doc == null)
+			removeTuple(locator);
+		else
+			addTuple(doc);
+		return result;
+	}
+
+	/**
+	 * @param subjectLocator
+	 * @param relationLocator can be <code>null</code>
+	 * @param objectType can be <code>null</code>
+	 * @return tuple locators; does not return <code>null</code>
+	 */
+	public List<String> listTuplesBySubject(String subjectLocator, String relationLocator, String objectType) {
+		return list(outgoing, subjectLocator, relationLocator, objectType);
+	}
+
+	/**
+	 * @param objectLocator
+	 * @param relationLocator can be <code>null</code>
+	 * @return tuple locators; does not return <code>null</code>
+	 */
+	public List<String> listTuplesByObject(String objectLocator, String relationLocator) {
+		return list(incoming, objectLocator, relationLocator, null);
+	}
+
+	List<String> list(List<IntList> adjacency, String locator, String relationLocator, String objectType) {
+		List<String> result = new ArrayList<String>();
+		lock.readLock().lock();
+		try {
+			Integer n = ids.get(locator);
+			if (n == null || n >= adjacency.size())
+				return result;
+			int rel = -1;
+			if (relationLocator != null) {
+				Integer r = ids.get(relationLocator);
+				if (r == null)
+					return result;
+				rel = r;
+			}
+			int ot = -1;
+			if (objectType != null) {
+				Integer o = ids.get(objectType);
+				if (o == null)
+					return result;
+				ot = o;
+			}
+			IntList tuples = adjacency.get(n);
+			int t;
+			for (int i=0;i<tuples.size();i++) {
+				t = tuples.get(i);
+				if ((rel == -1 || tRelation.get(t) == rel) &&
+					(ot == -1 || tObjectType.get(t) == ot))
+					result.add(tupleNames.get(t));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	////////////////////////////////
+	// all below require the write lock
+
+	int id(String locator) {
+		Integer x = ids.get(locator);
+		if (x != null)
+			return x;
+		int result = names.size();
+		names.add(locator);
+		ids.put(locator, result);
+		outgoing.add(null);
+		incoming.add(null);
+		return result;
+	}
+
+	int tupleId(String locator) {
+		Integer x = tupleIds.get(locator);
+		if (x != null)
+			return x;
+		int result = tupleNames.size();
+		tupleNames.add(locator);
+		tupleIds.put(locator, result);
+		tSubject.add(-1);
+		tObject.add(-1);
+		tRelation.add(-1);
+		tObjectType.add(-1);
+		return result;
+	}
+
+	void link(int t) {
+		adjacent(outgoing, tSubject.get(t)).add(t);
+		if (tObject.get(t) != -1)
+			adjacent(incoming, tObject.get(t)).add(t);
+	}
+
+	void unlink(int t) {
+		int n = tSubject.get(t);
+		if (n != -1 && outgoing.get(n) != null)
+			outgoing.get(n).removeValue(t);
+		n = tObject.get(t);
+		if (n != -1 && incoming.get(n) != null)
+			incoming.get(n).removeValue(t);
+	}
+
+	IntList adjacent(List<IntList> adjacency, int n) {
+		IntList result = adjacency.get(n);
+		if (result == null) {
+			result = new IntList(2);
+			adjacency.set(n, result);
+		}
+		return result;
+	}
+
+	boolean isNodeType(String objectType) {
+		return ITopicQuestsOntology.NODE_TYPE.equals(objectType) ||
+				ITopicQuestsOntology.VIRTUAL_NODE_TYPE.equals(objectType);
+	}
+
+	/**
+	 * @param o
+	 * @return a String, the first of a List, or <code>null</code>
+	 */
+	String first(Object o) {
+		if (o instanceof String)
+			return (String)o;
+		if (o instanceof List && !((List<?>)o).isEmpty())
+			return (String)((List<?>)o).get(0);
+		return null;
+	}
+
+	/**
+	 * @param o a partial update value such as <code>{set=value}</code>
+	 * @return
+	 */
+	String setValue(Object o) {
+		if (o instanceof Map)
+			return first(((Map<?,?>)o).get("set"));
+		return null;
+	}
+}
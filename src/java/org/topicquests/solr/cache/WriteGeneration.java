@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A counter moved on by every write, local or announced by a peer through
+ * invalidation. Caches of query results stamp each entry with the generation
+ * read <em>before</em> the query was sent, and ignore entries from an earlier
+ * generation, so a write which lands during the query also makes it stale</p>
+ * @author park
+ *
+ */
+public class WriteGeneration {
+	private AtomicLong generation = new AtomicLong();
+
+	public void next() {
+		generation.incrementAndGet();
+	}
+
+	public long get() {
+		return generation.get();
+	}
+}
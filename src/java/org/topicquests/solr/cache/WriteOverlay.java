@@ -0,0 +1,287 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.cache;
+
+import java.util.*;
+
+import org.topicquests.common.api.ITopicQuestsOntology;
+import org.topicquests.solr.QueryUtil;
+
+/**
+ * <p>Read-your-writes: remembers the documents this process has written until
+ * Solr's searcher can be expected to see them, so that a query sent meanwhile
+ * can be completed from here rather than by a hard commit per write</p>
+ * <p>A full write records the document. A partial update records only the
+ * locator, since the whole document is not at hand; the caller fetches it,
+ * e.g. by real-time get, and hands it back by way of {@link #resolve}, with
+ * the sequence number it was listed with, so that a document fetched before
+ * a later update is not kept</p>
+ * <p>An entry lives for <code>horizon</code> milliseconds after the last write
+ * to it; that should be longer than <code>commitWithin</code> plus the time a
+ * new searcher takes to open</p>
+ * @author park
+ *
+ */
+public class WriteOverlay {
+	private long horizon;
+	private int maxSize;
+	/** oldest write first; guarded by itself */
+	private LinkedHashMap<String,Entry> entries = new LinkedHashMap<String,Entry>();
+	/** once <code>horizon</code> has passed since this, every write is searchable */
+	private volatile long lastWrite = 0;
+	/** numbers the writes; guarded by <code>entries</code> */
+	private long sequence = 0;
+
+	/**
+	 * @param horizonMillis
+	 * @param maxSize oldest entries are dropped beyond this
+	 */
+	public WriteOverlay(long horizonMillis, int maxSize) {
+		horizon = horizonMillis;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * A whole document was written
+	 * @param document must include the locator
+	 */
+	public void recordWrite(Map<String,Object> document) {
+		String lox = (String)document.get(ITopicQuestsOntology.LOCATOR_PROPERTY);
+		if (lox != null)
+			record(lox, new HashMap<String,Object>(document));
+	}
+
+	/**
+	 * A partial update was sent; the document must be fetched again
+	 * @param locator
+	 */
+	public void recordUpdate(String locator) {
+		record(locator, null);
+	}
+
+	void record(String locator, Map<String,Object> document) {
+		long now = System.currentTimeMillis();
+		synchronized(entries) {
+			entries.remove(locator); //so that it moves to the end
+			entries.put(locator, new Entry(document, now, ++sequence));
+			lastWrite = now;
+			prune(now);
+		}
+	}
+
+	/**
+	 * Supply the current document for a partial update
+	 * @param locator
+	 * @param sequence as given by {@link #listPending()} before the document was fetched
+	 * @param document <code>null</code> if there is no such document
+	 */
+	public void resolve(String locator, long sequence, Map<String,Object> document) {
+		synchronized(entries) {
+			Entry e = entries.get(locator);
+			if (e == null || e.sequence != sequence || e.document != null)
+				return; //expired, or written again meanwhile
+			if (document == null)
+				entries.remove(locator);
+			else
+				e.document = new HashMap<String,Object>(document);
+		}
+	}
+
+	/**
+	 * <code>true</code> if nothing has been written within the horizon
+	 * @return
+	 */
+	public boolean isSettled() {
+		return System.currentTimeMillis() - lastWrite > horizon;
+	}
+
+	public boolean contains(String locator) {
+		synchronized(entries) {
+			prune(System.currentTimeMillis());
+			return entries.containsKey(locator);
+		}
+	}
+
+	/**
+	 * @param locator
+	 * @return a copy of the written document, or <code>null</code> if there is
+	 *  none or it is not yet resolved
+	 */
+	public Map<String,Object> get(String locator) {
+		synchronized(entries) {
+			prune(System.currentTimeMillis());
+			Entry e = entries.get(locator);
+			if (e == null || e.document == null)
+				return null;
+			return new HashMap<String,Object>(e.document);
+		}
+	}
+
+	/**
+	 * Locators updated partially whose documents are not yet resolved
+	 * @return locator to the sequence number of its last write, oldest first
+	 */
+	public Map<String,Long> listPending() {
+		Map<String,Long> result = new LinkedHashMap<String,Long>();
+		synchronized(entries) {
+			prune(System.currentTimeMillis());
+			Iterator<Map.Entry<String,Entry>>itr = entries.entrySet().iterator();
+			Map.Entry<String,Entry> e;
+			while (itr.hasNext()) {
+				e = itr.next();
+				if (e.getValue().document == null)
+					result.put(e.getKey(), e.getValue().sequence);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Copies of the resolved documents, oldest write first
+	 * @return
+	 */
+	public List<Map<String,Object>> listDocuments() {
+		List<Map<String,Object>> result = new ArrayList<Map<String,Object>>();
+		synchronized(entries) {
+			prune(System.currentTimeMillis());
+			Iterator<Entry>itr = entries.values().iterator();
+			Entry e;
+			while (itr.hasNext()) {
+				e = itr.next();
+				if (e.document != null)
+					result.add(new HashMap<String,Object>(e.document));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Drop expired entries, then the oldest beyond <code>maxSize</code>;
+	 * guarded by <code>entries</code>
+	 * @param now
+	 */
+	void prune(long now) {
+		Iterator<Entry>itr = entries.values().iterator();
+		int size = entries.size();
+		Entry e;
+		while (itr.hasNext()) {
+			e = itr.next();
+			if (size <= maxSize && now - e.written <= horizon)
+				break; //the rest are younger
+			itr.remove();
+			size--;
+		}
+	}
+
+	/**
+	 * Parse a query made only of <code>field:value</code> terms joined by
+	 * <code>AND</code>, such as the tuple queries build
+	 * @param query
+	 * @return field, value pairs with the values unescaped, or <code>null</code>
+	 *  if <code>query</code> is anything else
+	 */
+	public static List<String[]> parseTerms(String query) {
+		List<String[]> result = new ArrayList<String[]>();
+		String [] terms = query.trim().split(" AND ");
+		String term, field, value;
+		int where;
+		for (int i=0;i<terms.length;i++) {
+			term = terms[i].trim();
+			where = term.indexOf(':');
+			if (where < 1)
+				return null;
+			field = term.substring(0, where);
+			value = term.substring(where+1);
+			if (!isFieldName(field) || !isPlainValue(value))
+				return null;
+			result.add(new String[] {field, QueryUtil.unEscapeQueryCulprits(value)});
+		}
+		return result;
+	}
+
+	static boolean isFieldName(String field) {
+		char c;
+		for (int i=0;i<field.length();i++) {
+			c = field.charAt(i);
+			if (!Character.isLetterOrDigit(c) && c != '_')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * No unescaped syntax: quotes, wildcards, groups, ranges, whitespace, or
+	 * a leading operator; a hyphen inside a locator is fine
+	 * @param value
+	 * @return
+	 */
+	static boolean isPlainValue(String value) {
+		if (value.length() == 0 || "+-!".indexOf(value.charAt(0)) > -1)
+			return false;
+		char c;
+		for (int i=0;i<value.length();i++) {
+			c = value.charAt(i);
+			if (c == '\\') {
+				i++;
+				continue;
+			}
+			if (Character.isWhitespace(c) || "\"*?()[]{}:^~|&".indexOf(c) > -1)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * <code>true</code> if every term equals the field or one of its values.
+	 * An analyzed field can match in Solr where it does not match here
+	 * @param document
+	 * @param terms from {@link #parseTerms}
+	 * @return
+	 */
+	public static boolean matches(Map<String,Object> document, List<String[]> terms) {
+		Iterator<String[]>itr = terms.iterator();
+		String [] term;
+		Object v;
+		boolean found;
+		while (itr.hasNext()) {
+			term = itr.next();
+			v = document.get(term[0]);
+			if (v instanceof Collection) {
+				found = false;
+				Iterator<Object>vitr = ((Collection<Object>)v).iterator();
+				while (vitr.hasNext() && !found)
+					found = term[1].equals(String.valueOf(vitr.next()));
+			} else
+				found = (v != null && term[1].equals(String.valueOf(v)));
+			if (!found)
+				return false;
+		}
+		return true;
+	}
+
+	class Entry {
+		/** <code>null</code> until a partial update is resolved */
+		Map<String,Object> document;
+		long written;
+		long sequence;
+
+		Entry(Map<String,Object> document, long written, long sequence) {
+			this.document = document;
+			this.written = written;
+			this.sequence = sequence;
+		}
+	}
+}
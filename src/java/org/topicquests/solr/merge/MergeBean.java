@@ -16,6 +16,8 @@ import org.topicquests.model.api.INodeModel;
 import org.topicquests.model.api.ITuple;
 import org.topicquests.model.api.ITupleQuery;
 import org.topicquests.solr.SolrEnvironment;
+import org.topicquests.solr.AddPropertyValueMutator;
+import org.topicquests.solr.SetPropertyMutator;
 import org.topicquests.solr.api.ISolrDataProvider;
 import org.topicquests.solr.api.ISolrQueryIterator;
 import org.topicquests.util.LoggingPlatform;
@@ -376,6 +378,8 @@ public class MergeBean implements IMergeImplementation {
 	/**
 	 * <p>Perform a <em>Set Union</em> on various key/value pairs</p>
 	 * <p>This is ONLY appropriate for changes to an existing virtual proxy</p>
+	 * <p>Everything <code>virtualNode</code> lacks from <code>mergedNode</code> is
+	 * sent as one partial update; see {@link SetUnionDiff}</p>
 	 * @param virtualNode
 	 * @param mergedNode
 	 * @return
@@ -384,108 +388,23 @@ public class MergeBean implements IMergeImplementation {
 		IResult result = new ResultPojo();
 		String sourceNodeLocator = virtualNode.getLocator();
 		log.logDebug("MergeBean.surgicalSetUnionProperties- "+virtualNode.getLocator()+" "+mergedNode.getLocator());
-		Map<String,Object> updateMap = new HashMap<String,Object>();
-		Map<String,Object> newMap = new HashMap<String,Object>();
-		updateMap.put(ITopicQuestsOntology.LOCATOR_PROPERTY, sourceNodeLocator);
-		//other properties -- doing surgery on the map
 		//note: this will pick up all the labels and details in all languages
-		Map<String,Object>sourceMap = mergedNode.getProperties();
-		Map<String,Object>virtMap = virtualNode.getProperties();
-		Iterator<String>keys = sourceMap.keySet().iterator();
-		String key;
-		Object os;
-		Object ov;
-		List<String>sxx;
-		List<String>vxx;
+		SetUnionDiff diff = new SetUnionDiff(this, mergedNode.getProperties(), virtualNode.getProperties());
 		IResult x = null;
-		while (keys.hasNext()) {
-			key = keys.next();
-			log.logDebug("MergeBean.surgicalSetUnionProperties-1 "+key);
-			if (okToUse(key)) {
-				os = sourceMap.get(key);
-				ov = virtMap.get(key);
-				log.logDebug("MergeBean.surgicalSetUnionProperties-2 "+key+" "+ov+" "+os);
-				//resourceURL http://someserver.org/ http://someserver.org/
-				//details [Another key point was made that that is false, A key point was made that this is true] On the other hand, anything is possible
-				if (os instanceof String ||
-					os instanceof Date ||
-					os instanceof Long ||
-					os instanceof Double ||
-					os instanceof Integer ||
-					os instanceof Float ||
-					os instanceof Boolean) {
-					if (ov == null) {
-						//the case where the property does not yet exist
-						x = addPropertyValue(virtualNode, key, os);
-						if (x.hasError())
-							result.addErrorString(x.getErrorString());
-						log.logDebug("MergeBean.surgicalSetUnionProperties-2a "+x.getErrorString());
-//						newMap = new HashMap<String,Object>();
-//						newMap.put("set",os);
-//						updateMap.put(key, newMap);
-					} else if (ov instanceof String) {
-						//the case where the property does exist
-						
-						if (!ov.equals(os)) {
-							if (okToAdd(key)) {
-							//2 string entries, same key
-//							vxx = new ArrayList<String>();
-//							vxx.add((String)ov);
-//							vxx.add((String)os);
-//							newMap = new HashMap<String,Object>();
-//							newMap.put("set",vxx);
-//							updateMap.put(key, newMap);
-							x = addPropertyValue(virtualNode, key, os);
-							if (x.hasError())
-								result.addErrorString(x.getErrorString());
-							log.logDebug("MergeBean.surgicalSetUnionProperties-2b "+key+" "+x.getErrorString());
-							}
-						}
-					} else if (ov instanceof List) {
-						vxx = (List<String>)ov;
-						if (!vxx.contains((String)os)) {
-//							vxx.add((String)os);
-//							newMap = new HashMap<String,Object>();
-//							newMap.put("set",vxx);
-//							updateMap.put(key, newMap);
-							x = addPropertyValue(virtualNode, key, os);
-							if (x.hasError())
-								result.addErrorString(x.getErrorString());
-							log.logDebug("MergeBean.surgicalSetUnionProperties-2c "+key+" "+x.getErrorString());
-						}
-					}
-				} else { //os must be a list
-					boolean isNull = (ov == null);
-					boolean isNew = false;
-					sxx = (List<String>)os;
-					if (isNull) {
-						vxx = new ArrayList<String>();
-						
-					} else
-						vxx = (List<String>)ov;
-					int len = sxx.size();
-					for (int i=0;i<len;i++) {
-						if (!vxx.contains(sxx.get(i))) {
-//							vxx.add(sxx.get(i));
-							x = addPropertyValue(virtualNode, key, sxx.get(i));
-							if (x.hasError())
-								result.addErrorString(x.getErrorString());
-						}
-					}
-//					newMap = new HashMap<String,Object>();
-//					newMap.put("set",vxx);
-//					updateMap.put(key, newMap);
-					//WE NEVER SEE THIS
-					if (x != null)
-						log.logDebug("MergeBean.surgicalSetUnionProperties-3 "+key+" "+x.getErrorString());
-				}
+		if (database.useOptimisticConcurrency())
+			//diff is recomputed against the latest proxy on a version conflict
+			x = database.partialUpdateData(sourceNodeLocator, diff);
+		else {
+			Map<String,Object> updateMap = diff.delta(virtualNode.getProperties());
+			if (updateMap != null) {
+				updateMap.put(ITopicQuestsOntology.LOCATOR_PROPERTY, sourceNodeLocator);
+				log.logDebug("MergeBean.surgicalSetUnionProperties-1 "+updateMap);
+				x = database.partialUpdateData(updateMap);
 			}
-		}		
-		//MergeBean.surgicalSetUnionProperties-4 {locator=546f7528-63b2-4d08-a471-23b28e94979b}
+		}
+		if (x != null && x.hasError())
+			result.addErrorString(x.getErrorString());
 		log.logDebug("MergeBean.surgicalSetUnionProperties-4 "+result.getErrorString());
-//		IResult temp = database.partialUpdateData(updateMap);
-//		if (temp.hasError())
-//			result.addErrorString(temp.getErrorString());
 		database.removeFromCache(sourceNodeLocator);
 		return result;
 	}
@@ -818,6 +737,8 @@ public class MergeBean implements IMergeImplementation {
 	IResult changePropertyValue(INode node, String key, String newValue) {
 		log.logDebug("MergeBean.changePropertyValue- "+node.getLocator()+" "+key+" "+newValue);
 		String sourceNodeLocator = node.getLocator();
+		if (database.useOptimisticConcurrency())
+			return database.partialUpdateData(sourceNodeLocator, new SetPropertyMutator(key, newValue));
 		Map<String,Object> updateMap = new HashMap<String,Object>();
 		Map<String,String> newMap = new HashMap<String,String>();
 		updateMap.put(ITopicQuestsOntology.LOCATOR_PROPERTY, sourceNodeLocator);
@@ -831,6 +752,8 @@ public class MergeBean implements IMergeImplementation {
 	IResult addPropertyValue(INode node, String key, Object newValue) {
 		log.logDebug("MergeBean.addPropertyValue- "+node.getLocator()+" "+key+" "+newValue);
 		String sourceNodeLocator = node.getLocator();
+		if (database.useOptimisticConcurrency())
+			return database.partialUpdateData(sourceNodeLocator, new AddPropertyValueMutator(key, newValue));
 		Map<String,Object> propMap = node.getProperties();
 		Object ox = propMap.get(key);
 		Map<String,Object> updateMap = new HashMap<String,Object>();
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.merge;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.topicquests.common.ResultPojo;
+import org.topicquests.common.api.IResult;
+import org.topicquests.model.api.IMergeImplementation;
+import org.topicquests.model.api.IMergeQueue;
+import org.topicquests.solr.SolrEnvironment;
+import org.topicquests.util.LoggingPlatform;
+
+/**
+ * <p>Deduplicating merge queue.</p>
+ * <p>Merges which share a locator belong to the same <em>group</em>: a chain
+ * such as A-&gt;B then B-&gt;C is one group. Within a group, merges run in the order
+ * they were submitted, each waiting for the last one submitted before it;
+ * different groups run in parallel on a pool of <code>MergeQueueThreads</code> workers.
+ * A group is forgotten once its last merge is done.</p>
+ * <p>Finished merges are remembered for <code>MergeQueueRecentWindow</code> milliseconds</p>
+ * @author park
+ *
+ */
+public class MergeQueue implements IMergeQueue {
+	private LoggingPlatform log = LoggingPlatform.getInstance();
+	private IMergeImplementation merger;
+	private ExecutorService workers;
+	/** queued or running, by pair key */
+	private Map<String,MergeTask> inFlight = new HashMap<String,MergeTask>();
+	/** finished, by pair key, oldest first */
+	private LinkedHashMap<String,Recent> recent = new LinkedHashMap<String,Recent>();
+	private long recentWindow = 60000;
+	private static final int MAX_RECENT = 10000;
+	/** the group each locator with merges queued or running belongs to */
+	private Map<String,Group> groups = new HashMap<String,Group>();
+
+	public MergeQueue(SolrEnvironment env, IMergeImplementation m) {
+		merger = m;
+		int threads = 4;
+		String x = env.getStringProperty("MergeQueueThreads");
+		if (x != null)
+			threads = Integer.parseInt(x);
+		x = env.getStringProperty("MergeQueueRecentWindow");
+		if (x != null)
+			recentWindow = Long.parseLong(x);
+		final AtomicInteger count = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "MergeQueue-"+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	@Override
+	public synchronized Future<IResult> submitMerge(final String sourceNodeLocator,
+			final String targetNodeLocator, final Map<String, Double> mergeData,
+			final double mergeConfidence, final String userLocator) {
+		if (sourceNodeLocator.equals(targetNodeLocator))
+			return done(new ResultPojo());
+		String key = pairKey(sourceNodeLocator, targetNodeLocator);
+		MergeTask task = inFlight.get(key);
+		if (task != null) {
+			log.logDebug("MergeQueue duplicate in flight "+key);
+			return task.future;
+		}
+		purgeRecent();
+		Recent r = recent.get(key);
+		if (r != null) {
+			log.logDebug("MergeQueue duplicate recent "+key);
+			return done(r.result);
+		}
+		task = new MergeTask(key, sourceNodeLocator, new Callable<IResult>() {
+			@Override
+			public IResult call() throws Exception {
+				return merger.assertMerge(sourceNodeLocator, targetNodeLocator, mergeData, mergeConfidence, userLocator);
+			}
+		});
+		Group a = groups.get(sourceNodeLocator);
+		Group b = groups.get(targetNodeLocator);
+		Group g;
+		if (a == null && b == null)
+			g = new Group();
+		else if (a == null || a == b) {
+			g = b;
+			task.waitFor(b.tail);
+		} else if (b == null) {
+			g = a;
+			task.waitFor(a.tail);
+		} else {
+			//this merge joins two groups
+			task.waitFor(a.tail);
+			task.waitFor(b.tail);
+			g = a;
+			Group small = b;
+			if (b.locators.size() > a.locators.size()) {
+				g = b;
+				small = a;
+			}
+			Iterator<String>itr = small.locators.iterator();
+			String lox;
+			while (itr.hasNext()) {
+				lox = itr.next();
+				groups.put(lox, g);
+				g.locators.add(lox);
+			}
+		}
+		g.locators.add(sourceNodeLocator);
+		g.locators.add(targetNodeLocator);
+		groups.put(sourceNodeLocator, g);
+		groups.put(targetNodeLocator, g);
+		g.tail = task;
+		inFlight.put(key, task);
+		if (task.waitingOn == 0)
+			dispatch(task);
+		return task.future;
+	}
+
+	/**
+	 * Called by a worker when <code>task</code> is done
+	 * @param task
+	 */
+	synchronized void finished(MergeTask task) {
+		inFlight.remove(task.key);
+		IResult result;
+		try {
+			result = task.future.get();
+		} catch (Exception e) {
+			log.logError("MergeQueue "+task.key+" "+e.getMessage(), e);
+			result = new ResultPojo();
+			result.addErrorString(e.getMessage());
+		}
+		//a failure, e.g. Solr being unreachable, may be retried at once
+		if (!result.hasError())
+			recent.put(task.key, new Recent(result));
+		Iterator<MergeTask>itr = task.dependents.iterator();
+		MergeTask t;
+		while (itr.hasNext()) {
+			t = itr.next();
+			if (--t.waitingOn == 0)
+				dispatch(t);
+		}
+		Group g = groups.get(task.locator);
+		if (g != null && g.tail == task) {
+			//nothing more queued in this group
+			Iterator<String>litr = g.locators.iterator();
+			while (litr.hasNext())
+				groups.remove(litr.next());
+		}
+	}
+
+	/**
+	 * Hand <code>task</code> to a worker; after {@link #shutDown()} the
+	 * task is cancelled instead, and so are the tasks waiting on it
+	 * @param task
+	 */
+	synchronized void dispatch(MergeTask task) {
+		try {
+			workers.execute(task);
+		} catch (RejectedExecutionException e) {
+			log.logError("MergeQueue rejected "+task.key, e);
+			task.future.cancel(false);
+			finished(task);
+		}
+	}
+
+	void purgeRecent() {
+		long oldest = System.currentTimeMillis() - recentWindow;
+		Iterator<Recent>itr = recent.values().iterator();
+		Recent r;
+		int size = recent.size();
+		while (itr.hasNext()) {
+			r = itr.next();
+			if (r.time >= oldest && size <= MAX_RECENT)
+				break;
+			itr.remove();
+			size--;
+		}
+	}
+
+	String pairKey(String a, String b) {
+		if (a.compareTo(b) < 0)
+			return a+"|"+b;
+		return b+"|"+a;
+	}
+
+	Future<IResult> done(final IResult r) {
+		FutureTask<IResult> result = new FutureTask<IResult>(new Callable<IResult>() {
+			@Override
+			public IResult call() throws Exception {
+				return r;
+			}
+		});
+		result.run();
+		return result;
+	}
+
+	@Override
+	public synchronized int getPendingCount() {
+		return inFlight.size();
+	}
+
+	@Override
+	public void shutDown() {
+		workers.shutdown();
+	}
+
+	////////////////////////////////////
+	// bookkeeping, guarded by MergeQueue.this
+
+	class MergeTask implements Runnable {
+		String key;
+		/** any one of this task's locators */
+		String locator;
+		FutureTask<IResult> future;
+		/** number of unfinished tasks this one waits for */
+		int waitingOn = 0;
+		List<MergeTask> dependents = new ArrayList<MergeTask>();
+
+		MergeTask(String key, String locator, Callable<IResult> work) {
+			this.key = key;
+			this.locator = locator;
+			future = new FutureTask<IResult>(work);
+		}
+
+		void waitFor(MergeTask t) {
+			if (t != null) {
+				t.dependents.add(this);
+				waitingOn++;
+			}
+		}
+
+		@Override
+		public void run() {
+			future.run();
+			finished(this);
+		}
+	}
+
+	class Group {
+		Set<String> locators = new HashSet<String>();
+		/** the last merge submitted to this group */
+		MergeTask tail = null;
+	}
+
+	class Recent {
+		long time = System.currentTimeMillis();
+		IResult result;
+
+		Recent(IResult r) {
+			result = r;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.merge;
+
+import java.util.*;
+
+import org.topicquests.solr.api.IPartialUpdateMutator;
+
+/**
+ * <p>Computes, in one pass, everything a virtual proxy lacks from a node
+ * merged into it, as a single atomic-update map: <code>set</code> for properties
+ * the proxy does not have, <code>add</code> of the missing values for those it has.</p>
+ * <p>Membership is tested with hash sets rather than <code>List.contains</code>.
+ * Which keys may be copied, or added to when single-valued, follows
+ * <code>MergeBean.okToUse</code> and <code>MergeBean.okToAdd</code></p>
+ * @author park
+ *
+ */
+public class SetUnionDiff implements IPartialUpdateMutator {
+	private MergeBean rules;
+	private Map<String,Object> mergedMap;
+	private Map<String,Object> virtualMap;
+
+	/**
+	 * @param rules
+	 * @param mergedProperties the node being merged
+	 * @param virtualProperties the virtual proxy as we last saw it
+	 */
+	public SetUnionDiff(MergeBean rules, Map<String,Object> mergedProperties, Map<String,Object> virtualProperties) {
+		this.rules = rules;
+		mergedMap = mergedProperties;
+		virtualMap = virtualProperties;
+	}
+
+	@Override
+	public Map<String, Object> mutate(Map<String, Object> current) {
+		return delta(current == null ? virtualMap : current);
+	}
+
+	/**
+	 * @param virtMap
+	 * @return <code>null</code> if <code>virtMap</code> already has everything
+	 */
+	public Map<String,Object> delta(Map<String,Object> virtMap) {
+		Map<String,Object> result = new HashMap<String,Object>();
+		Iterator<String>keys = mergedMap.keySet().iterator();
+		String key;
+		Object os;
+		Object ov;
+		Map<String,Object> op;
+		while (keys.hasNext()) {
+			key = keys.next();
+			if (!rules.okToUse(key))
+				continue;
+			os = mergedMap.get(key);
+			ov = virtMap.get(key);
+			op = null;
+			if (os instanceof List) {
+				Collection<Object> missing = missing((List<Object>)os, ov);
+				if (!missing.isEmpty()) {
+					op = new HashMap<String,Object>();
+					op.put(ov == null ? "set" : "add", new ArrayList<Object>(missing));
+				}
+			} else if (os != null) {
+				if (ov == null) {
+					op = new HashMap<String,Object>();
+					op.put("set", os);
+				} else if (ov instanceof List) {
+					if (!new HashSet<Object>((List<Object>)ov).contains(os)) {
+						op = new HashMap<String,Object>();
+						op.put("add", os);
+					}
+				} else if (ov instanceof String && !ov.equals(os) && rules.okToAdd(key)) {
+					//2 string entries, same key
+					op = new HashMap<String,Object>();
+					op.put("add", os);
+				}
+			}
+			if (op != null)
+				result.put(key, op);
+		}
+		if (result.isEmpty())
+			return null;
+		return result;
+	}
+
+	/**
+	 * @param source
+	 * @param existing <code>null</code>, a single value or a List
+	 * @return values in <code>source</code> but not <code>existing</code>, in order, without duplicates
+	 */
+	Collection<Object> missing(List<Object> source, Object existing) {
+		Set<Object> have = new HashSet<Object>();
+		if (existing instanceof Collection)
+			have.addAll((Collection<Object>)existing);
+		else if (existing != null)
+			have.add(existing);
+		Set<Object> result = new LinkedHashSet<Object>();
+		Iterator<Object>itr = source.iterator();
+		Object o;
+		while (itr.hasNext()) {
+			o = itr.next();
+			if (!have.contains(o))
+				result.add(o);
+		}
+		return result;
+	}
+}
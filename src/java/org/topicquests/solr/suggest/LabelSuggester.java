@@ -0,0 +1,294 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.suggest;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.solr.common.SolrDocumentList;
+import org.topicquests.common.ResultPojo;
+import org.topicquests.common.api.IResult;
+import org.topicquests.common.api.ITopicQuestsOntology;
+import org.topicquests.solr.QueryUtil;
+import org.topicquests.solr.api.ISolrClient;
+import org.topicquests.util.LoggingPlatform;
+
+/**
+ * <p>Type-ahead completion of node labels by prefix, from memory.</p>
+ * <p>One {@link WeightedPrefixTrie} per label field (<code>label</code> for
+ * English, <code>labelde</code> and so on); a node's weight is its number of
+ * tuples, so better connected nodes come first. Private nodes are kept with
+ * their restrictions and only suggested to matching credentials.</p>
+ * <p>Built at startup by paging through all documents, then kept current by
+ * the write paths in <code>SolrDataProvider</code></p>
+ * @author park
+ *
+ */
+public class LabelSuggester {
+	private LoggingPlatform log = LoggingPlatform.getInstance();
+	private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private Map<String,WeightedPrefixTrie> tries = new HashMap<String,WeightedPrefixTrie>();
+	private Map<String,SuggestionItem> items = new HashMap<String,SuggestionItem>();
+	private volatile boolean isReady = false;
+	private static final int PAGE_SIZE = 1000;
+
+	public boolean isReady() {
+		return isReady;
+	}
+
+	/**
+	 * Page through all documents
+	 * @param client
+	 * @return
+	 */
+	public IResult build(ISolrClient client) {
+		IResult result = new ResultPojo();
+		int start = 0;
+		IResult r;
+		SolrDocumentList docs;
+		long startTime = System.currentTimeMillis();
+		while (true) {
+			r = client.runQuery("*:*", start, PAGE_SIZE);
+			if (r.hasError()) {
+				result.addErrorString(r.getErrorString());
+				return result;
+			}
+			docs = (SolrDocumentList)r.getResultObject();
+			if (docs == null || docs.isEmpty())
+				break;
+			for (int i=0;i<docs.size();i++)
+				index(docs.get(i), true);
+			start += docs.size();
+		}
+		isReady = true;
+		log.record("LabelSuggester built "+items.size()+" "+(System.currentTimeMillis()-startTime));
+		return result;
+	}
+
+	/**
+	 * @param prefix
+	 * @param language e.g. <code>en</code>
+	 * @param count
+	 * @param credentials can be <code>null</code>
+	 * @return does not return <code>null</code>
+	 */
+	public List<LabelSuggestion> suggest(String prefix, String language, int count, Set<String> credentials) {
+		String field = ITopicQuestsOntology.LABEL_PROPERTY;
+		if (language != null && !language.equals("en"))
+			field += language;
+		lock.readLock().lock();
+		try {
+			WeightedPrefixTrie t = tries.get(field);
+			if (t == null)
+				return new ArrayList<LabelSuggestion>();
+			return t.complete(prefix, count, credentials);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Add or replace a whole node; tuples are ignored
+	 * @param props
+	 * @param isEscaped <code>true</code> if labels are as stored in Solr
+	 */
+	public void index(Map<String,Object> props, boolean isEscaped) {
+		String lox = first(props.get(ITopicQuestsOntology.LOCATOR_PROPERTY));
+		if (lox == null || props.get(ITopicQuestsOntology.TUPLE_SUBJECT_PROPERTY) != null)
+			return;
+		lock.writeLock().lock();
+		try {
+			SuggestionItem item = items.get(lox);
+			if (item != null)
+				removeLabels(item);
+			else {
+				item = new SuggestionItem(lox);
+				items.put(lox, item);
+			}
+			item.setIsPrivate(isTrue(props.get(ITopicQuestsOntology.IS_PRIVATE_PROPERTY)));
+			item.setRestrictions(list(props.get(ITopicQuestsOntology.RESTRICTION_PROPERTY_TYPE)));
+			item.setWeight(list(props.get(ITopicQuestsOntology.TUPLE_LIST_PROPERTY)).size() +
+					list(props.get(ITopicQuestsOntology.TUPLE_LIST_PROPERTY_RESTRICTED)).size());
+			Iterator<String>itr = props.keySet().iterator();
+			String key;
+			while (itr.hasNext()) {
+				key = itr.next();
+				if (isLabelField(key))
+					addLabels(item, key, list(props.get(key)), isEscaped);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Apply the <code>set</code> and <code>add</code> operations of a partial
+	 * update to a node we already know
+	 * @param fields
+	 */
+	public void applyUpdate(Map<String,Object> fields) {
+		String lox = first(fields.get(ITopicQuestsOntology.LOCATOR_PROPERTY));
+		if (lox == null)
+			return;
+		lock.writeLock().lock();
+		try {
+			SuggestionItem item = items.get(lox);
+			if (item == null)
+				return;
+			Iterator<String>itr = fields.keySet().iterator();
+			String key;
+			Object v;
+			String op;
+			List<String> vals;
+			boolean isReweighed = false;
+			while (itr.hasNext()) {
+				key = itr.next();
+				v = fields.get(key);
+				if (!(v instanceof Map) || ((Map<?,?>)v).size() != 1)
+					continue;
+				op = (String)((Map<?,?>)v).keySet().iterator().next();
+				vals = list(((Map<?,?>)v).get(op));
+				if (isLabelField(key)) {
+					if (op.equals("set")) {
+						removeLabels(item, key);
+						addLabels(item, key, vals, false);
+					} else if (op.equals("add"))
+						addLabels(item, key, vals, false);
+				} else if (key.equals(ITopicQuestsOntology.TUPLE_LIST_PROPERTY) ||
+						key.equals(ITopicQuestsOntology.TUPLE_LIST_PROPERTY_RESTRICTED)) {
+					//a set replaces one of two lists, so only adds keep the weight exact
+					if (op.equals("add")) {
+						item.setWeight(item.getWeight() + vals.size());
+						isReweighed = true;
+					}
+				} else if (key.equals(ITopicQuestsOntology.IS_PRIVATE_PROPERTY) && op.equals("set"))
+					item.setIsPrivate(isTrue(((Map<?,?>)v).get(op)));
+				else if (key.equals(ITopicQuestsOntology.RESTRICTION_PROPERTY_TYPE)) {
+					if (op.equals("set"))
+						item.setRestrictions(vals);
+					else if (op.equals("add")) {
+						List<String> l = new ArrayList<String>();
+						if (item.getRestrictions() != null)
+							l.addAll(item.getRestrictions());
+						l.addAll(vals);
+						item.setRestrictions(l);
+					}
+				}
+			}
+			if (isReweighed)
+				reweigh(item);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	////////////////////////////////
+	// all below require the write lock
+
+	void addLabels(SuggestionItem item, String field, List<String> labels, boolean isEscaped) {
+		if (labels.isEmpty())
+			return;
+		WeightedPrefixTrie t = tries.get(field);
+		if (t == null) {
+			t = new WeightedPrefixTrie();
+			tries.put(field, t);
+		}
+		List<String> l = item.labels.get(field);
+		if (l == null) {
+			l = new ArrayList<String>();
+			item.labels.put(field, l);
+		}
+		String label;
+		for (int i=0;i<labels.size();i++) {
+			label = labels.get(i);
+			if (isEscaped)
+				label = QueryUtil.unEscapeQueryCulprits(label);
+			if (!l.contains(label)) {
+				l.add(label);
+				t.add(label, item);
+			}
+		}
+	}
+
+	void removeLabels(SuggestionItem item) {
+		Iterator<String>itr = new ArrayList<String>(item.labels.keySet()).iterator();
+		while (itr.hasNext())
+			removeLabels(item, itr.next());
+	}
+
+	void removeLabels(SuggestionItem item, String field) {
+		List<String> l = item.labels.remove(field);
+		WeightedPrefixTrie t = tries.get(field);
+		if (l == null || t == null)
+			return;
+		for (int i=0;i<l.size();i++)
+			t.remove(l.get(i), item);
+	}
+
+	void reweigh(SuggestionItem item) {
+		Iterator<String>itr = item.labels.keySet().iterator();
+		String field;
+		List<String> l;
+		WeightedPrefixTrie t;
+		while (itr.hasNext()) {
+			field = itr.next();
+			t = tries.get(field);
+			l = item.labels.get(field);
+			for (int i=0;i<l.size();i++)
+				t.reweigh(l.get(i));
+		}
+	}
+
+	/**
+	 * <code>label</code> or <code>label</code> followed by a two letter language code
+	 * @param key
+	 * @return
+	 */
+	boolean isLabelField(String key) {
+		String lp = ITopicQuestsOntology.LABEL_PROPERTY;
+		return key.startsWith(lp) &&
+			(key.length() == lp.length() || key.length() == lp.length()+2);
+	}
+
+	List<String> list(Object o) {
+		List<String> result = new ArrayList<String>();
+		if (o instanceof String)
+			result.add((String)o);
+		else if (o instanceof Collection) {
+			Iterator<?>itr = ((Collection<?>)o).iterator();
+			Object x;
+			while (itr.hasNext()) {
+				x = itr.next();
+				if (x != null)
+					result.add(x.toString());
+			}
+		}
+		return result;
+	}
+
+	String first(Object o) {
+		List<String> l = list(o);
+		return l.isEmpty() ? null : l.get(0);
+	}
+
+	boolean isTrue(Object o) {
+		if (o instanceof Boolean)
+			return ((Boolean)o).booleanValue();
+		if (o instanceof String)
+			return Boolean.parseBoolean((String)o);
+		return false;
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.suggest;
+
+/**
+ * One completion returned by {@link LabelSuggester}
+ * @author park
+ *
+ */
+public class LabelSuggestion {
+	private String label;
+	private String locator;
+	private long weight;
+
+	public LabelSuggestion(String label, String locator, long weight) {
+		this.label = label;
+		this.locator = locator;
+		this.weight = weight;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public String getLocator() {
+		return locator;
+	}
+
+	/**
+	 * @return the number of tuples of the node when indexed
+	 */
+	public long getWeight() {
+		return weight;
+	}
+
+	@Override
+	public String toString() {
+		return label+" "+locator+" "+weight;
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.suggest;
+
+import java.util.*;
+
+/**
+ * <p>What {@link LabelSuggester} knows of one node: its weight, its access
+ * restrictions, and its labels per label field</p>
+ * @author park
+ *
+ */
+public class SuggestionItem {
+	private String locator;
+	private long weight = 0;
+	private boolean isPrivate = false;
+	private List<String> restrictions = null;
+	/** labels by field, e.g. <code>label</code>, <code>labelde</code> */
+	Map<String,List<String>> labels = new HashMap<String,List<String>>();
+
+	SuggestionItem(String locator) {
+		this.locator = locator;
+	}
+
+	public String getLocator() {
+		return locator;
+	}
+
+	public long getWeight() {
+		return weight;
+	}
+
+	void setWeight(long w) {
+		weight = w;
+	}
+
+	void setIsPrivate(boolean p) {
+		isPrivate = p;
+	}
+
+	void setRestrictions(List<String> r) {
+		restrictions = r;
+	}
+
+	List<String> getRestrictions() {
+		return restrictions;
+	}
+
+	/**
+	 * The same test as <code>SolrDataProvider.testNodeForCredentials</code>
+	 * @param credentials can be <code>null</code>
+	 * @return
+	 */
+	public boolean isVisible(Set<String> credentials) {
+		if (!isPrivate)
+			return true;
+		if (credentials == null || restrictions == null)
+			return false;
+		for (int i=0;i<restrictions.size();i++) {
+			if (credentials.contains(restrictions.get(i)))
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.solr.suggest;
+
+import java.util.*;
+
+/**
+ * <p>A character trie over lowercased labels. Each trie node keeps the
+ * largest weight found beneath it, so the top <code>count</code> completions
+ * of a prefix are found best first, without visiting every completion.</p>
+ * <p>Not thread safe: {@link LabelSuggester} guards it</p>
+ * @author park
+ *
+ */
+public class WeightedPrefixTrie {
+	private TrieNode root = new TrieNode();
+	private int size = 0;
+
+	/**
+	 * @param label
+	 * @param item
+	 */
+	public void add(String label, SuggestionItem item) {
+		String key = label.toLowerCase();
+		List<TrieNode> path = new ArrayList<TrieNode>(key.length()+1);
+		TrieNode n = root;
+		path.add(n);
+		TrieNode child;
+		for (int i=0;i<key.length();i++) {
+			child = n.getChild(key.charAt(i));
+			if (child == null) {
+				child = new TrieNode();
+				n.putChild(key.charAt(i), child);
+			}
+			n = child;
+			path.add(n);
+		}
+		if (n.entries == null)
+			n.entries = new ArrayList<Entry>(1);
+		n.entries.add(new Entry(label, item));
+		size++;
+		updateWeights(path);
+	}
+
+	/**
+	 * @param label
+	 * @param item
+	 */
+	public void remove(String label, SuggestionItem item) {
+		List<TrieNode> path = path(label.toLowerCase());
+		if (path == null)
+			return;
+		TrieNode n = path.get(path.size()-1);
+		if (n.entries == null)
+			return;
+		Iterator<Entry>itr = n.entries.iterator();
+		Entry e;
+		while (itr.hasNext()) {
+			e = itr.next();
+			if (e.item == item && e.label.equals(label)) {
+				itr.remove();
+				size--;
+				break;
+			}
+		}
+		if (n.entries.isEmpty())
+			n.entries = null;
+		updateWeights(path);
+	}
+
+	/**
+	 * Called when the weight of an item with <code>label</code> has changed
+	 * @param label
+	 */
+	public void reweigh(String label) {
+		List<TrieNode> path = path(label.toLowerCase());
+		if (path != null)
+			updateWeights(path);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param prefix
+	 * @param count
+	 * @param credentials can be <code>null</code>
+	 * @return the heaviest visible completions of <code>prefix</code>, heaviest first
+	 */
+	public List<LabelSuggestion> complete(String prefix, int count, Set<String> credentials) {
+		List<LabelSuggestion> result = new ArrayList<LabelSuggestion>();
+		List<TrieNode> path = path(prefix.toLowerCase());
+		if (path == null)
+			return result;
+		PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+		queue.add(new Candidate(path.get(path.size()-1), null));
+		Candidate c;
+		TrieNode n;
+		while (!queue.isEmpty() && result.size() < count) {
+			c = queue.poll();
+			if (c.entry != null) {
+				if (c.entry.item.isVisible(credentials))
+					result.add(new LabelSuggestion(c.entry.label, c.entry.item.getLocator(), c.entry.item.getWeight()));
+				continue;
+			}
+			n = c.node;
+			if (n.entries != null) {
+				for (int i=0;i<n.entries.size();i++)
+					queue.add(new Candidate(null, n.entries.get(i)));
+			}
+			for (int i=0;i<n.childCount;i++)
+				queue.add(new Candidate(n.children[i], null));
+		}
+		return result;
+	}
+
+	/**
+	 * @param key
+	 * @return root to the node for <code>key</code>, or <code>null</code>
+	 */
+	List<TrieNode> path(String key) {
+		List<TrieNode> result = new ArrayList<TrieNode>(key.length()+1);
+		TrieNode n = root;
+		result.add(n);
+		for (int i=0;i<key.length();i++) {
+			n = n.getChild(key.charAt(i));
+			if (n == null)
+				return null;
+			result.add(n);
+		}
+		return result;
+	}
+
+	/**
+	 * Recompute <code>maxWeight</code> from the bottom of <code>path</code> up;
+	 * prune nodes left empty
+	 * @param path
+	 */
+	void updateWeights(List<TrieNode> path) {
+		TrieNode n;
+		long w;
+		for (int i=path.size()-1;i>=0;i--) {
+			n = path.get(i);
+			w = -1;
+			if (n.entries != null) {
+				for (int j=0;j<n.entries.size();j++)
+					w = Math.max(w, n.entries.get(j).item.getWeight());
+			}
+			for (int j=0;j<n.childCount;j++)
+				w = Math.max(w, n.children[j].maxWeight);
+			n.maxWeight = w;
+			if (i > 0 && n.entries == null && n.childCount == 0)
+				path.get(i-1).removeChild(n);
+		}
+	}
+
+	/**
+	 * Children are kept in small arrays sorted by character
+	 */
+	class TrieNode {
+		char [] keys = null;
+		TrieNode [] children = null;
+		int childCount = 0;
+		List<Entry> entries = null;
+		long maxWeight = -1;
+
+		TrieNode getChild(char c) {
+			if (childCount == 0)
+				return null;
+			int i = Arrays.binarySearch(keys, 0, childCount, c);
+			return (i < 0) ? null : children[i];
+		}
+
+		void putChild(char c, TrieNode n) {
+			if (keys == null) {
+				keys = new char[2];
+				children = new TrieNode[2];
+			} else if (childCount == keys.length) {
+				keys = Arrays.copyOf(keys, childCount*2);
+				children = Arrays.copyOf(children, childCount*2);
+			}
+			int i = -(Arrays.binarySearch(keys, 0, childCount, c) + 1);
+			System.arraycopy(keys, i, keys, i+1, childCount-i);
+			System.arraycopy(children, i, children, i+1, childCount-i);
+			keys[i] = c;
+			children[i] = n;
+			childCount++;
+		}
+
+		void removeChild(TrieNode n) {
+			for (int i=0;i<childCount;i++) {
+				if (children[i] == n) {
+					System.arraycopy(keys, i+1, keys, i, childCount-i-1);
+					System.arraycopy(children, i+1, children, i, childCount-i-1);
+					childCount--;
+					children[childCount] = null;
+					return;
+				}
+			}
+		}
+	}
+
+	class Entry {
+		String label;
+		SuggestionItem item;
+
+		Entry(String l, SuggestionItem i) {
+			label = l;
+			item = i;
+		}
+	}
+
+	/**
+	 * A subtree or an entry, ordered heaviest first
+	 */
+	class Candidate implements Comparable<Candidate> {
+		TrieNode node;
+		Entry entry;
+		long weight;
+
+		Candidate(TrieNode n, Entry e) {
+			node = n;
+			entry = e;
+			weight = (e != null) ? e.item.getWeight() : n.maxWeight;
+		}
+
+		@Override
+		public int compareTo(Candidate o) {
+			if (weight != o.weight)
+				return (weight > o.weight) ? -1 : 1;
+			//an entry before a subtree of the same weight
+			if (entry != null && o.entry == null)
+				return -1;
+			if (entry == null && o.entry != null)
+				return 1;
+			return 0;
+		}
+	}
+}
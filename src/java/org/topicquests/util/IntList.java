@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.util;
+
+/**
+ * A growable list of primitive <code>int</code>s
+ * @author park
+ *
+ */
+public class IntList {
+	private int [] data;
+	private int size = 0;
+
+	public IntList() {
+		this(4);
+	}
+
+	public IntList(int capacity) {
+		data = new int[Math.max(1, capacity)];
+	}
+
+	public void add(int v) {
+		if (size == data.length) {
+			int [] x = new int[data.length * 2];
+			System.arraycopy(data, 0, x, 0, size);
+			data = x;
+		}
+		data[size++] = v;
+	}
+
+	public int get(int i) {
+		if (i >= size)
+			throw new IndexOutOfBoundsException(i+" "+size);
+		return data[i];
+	}
+
+	public void set(int i, int v) {
+		if (i >= size)
+			throw new IndexOutOfBoundsException(i+" "+size);
+		data[i] = v;
+	}
+
+	/**
+	 * Remove the first occurrence of <code>v</code>; order is not kept
+	 * @param v
+	 * @return <code>false</code> if not found
+	 */
+	public boolean removeValue(int v) {
+		for (int i=0;i<size;i++) {
+			if (data[i] == v) {
+				data[i] = data[--size];
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <p>A {@link Future} whose value is <code>map</code> applied to the value of
+ * another; <code>map</code> runs once, in the first thread to call <code>get</code>,
+ * so that composing futures ties up no pool thread waiting on another</p>
+ * @author park
+ *
+ * @param <S> the value of the underlying future
+ * @param <T> the value of this one
+ */
+public abstract class MappedFuture<S,T> implements Future<T> {
+	private Future<S> source;
+	private T value = null;
+	private boolean isMapped = false;
+
+	public MappedFuture(Future<S> source) {
+		this.source = source;
+	}
+
+	/**
+	 * @param s
+	 * @return
+	 * @throws Exception which <code>get</code> reports as an {@link ExecutionException}
+	 */
+	protected abstract T map(S s) throws Exception;
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return source.cancel(mayInterruptIfRunning);
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return source.isCancelled();
+	}
+
+	@Override
+	public boolean isDone() {
+		return source.isDone();
+	}
+
+	@Override
+	public T get() throws InterruptedException, ExecutionException {
+		return mapOnce(source.get());
+	}
+
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		return mapOnce(source.get(timeout, unit));
+	}
+
+	synchronized T mapOnce(S s) throws ExecutionException {
+		if (!isMapped) {
+			try {
+				value = map(s);
+			} catch (Exception e) {
+				throw new ExecutionException(e);
+			}
+			isMapped = true;
+		}
+		return value;
+	}
+}
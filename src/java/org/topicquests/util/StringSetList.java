@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.topicquests.util;
+
+import java.util.*;
+
+/**
+ * <p>A <code>List&lt;String&gt;</code> with set semantics: insertion ordered,
+ * no duplicates, and <code>contains</code> and <code>add</code> in constant time.</p>
+ * <p>Used by {@link org.topicquests.model.Node} for properties such as
+ * <code>tuples</code>, which on hub nodes hold thousands of locators.
+ * <code>add</code> returns <code>false</code> for a value already present;
+ * <code>set</code> or an insert of a value already present is refused</p>
+ * @author park
+ *
+ */
+public class StringSetList extends AbstractList<String> implements RandomAccess {
+	private ArrayList<String> values;
+	private HashSet<String> index;
+
+	public StringSetList() {
+		values = new ArrayList<String>();
+		index = new HashSet<String>();
+	}
+
+	/**
+	 * @param c duplicates are dropped
+	 */
+	public StringSetList(Collection<String> c) {
+		values = new ArrayList<String>(c.size());
+		index = new HashSet<String>(Math.max(16, c.size()*2));
+		addAll(c);
+	}
+
+	@Override
+	public String get(int i) {
+		return values.get(i);
+	}
+
+	@Override
+	public int size() {
+		return values.size();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return index.contains(o);
+	}
+
+	@Override
+	public boolean add(String s) {
+		if (!index.add(s))
+			return false;
+		values.add(s);
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public void add(int i, String s) {
+		if (index.contains(s))
+			throw new IllegalArgumentException("StringSetList already contains "+s);
+		values.add(i, s);
+		index.add(s);
+		modCount++;
+	}
+
+	@Override
+	public String set(int i, String s) {
+		String old = values.get(i);
+		if (old.equals(s))
+			return old;
+		if (index.contains(s))
+			throw new IllegalArgumentException("StringSetList already contains "+s);
+		values.set(i, s);
+		index.remove(old);
+		index.add(s);
+		return old;
+	}
+
+	@Override
+	public String remove(int i) {
+		String old = values.remove(i);
+		index.remove(old);
+		modCount++;
+		return old;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!index.remove(o))
+			return false;
+		values.remove(o);
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		if (!index.contains(o))
+			return -1;
+		return values.indexOf(o);
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		return indexOf(o);
+	}
+
+	@Override
+	public void clear() {
+		values.clear();
+		index.clear();
+		modCount++;
+	}
+}
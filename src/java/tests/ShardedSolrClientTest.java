@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package tests;
+
+import java.security.MessageDigest;
+import java.util.*;
+
+import org.topicquests.solr.Solr3Client;
+import org.topicquests.solr.ShardedSolrClient;
+
+/**
+ * @author park
+ * Checks, without Solr, how {@link ShardedSolrClient} places locators on its
+ * hash ring: evenly, the same way every time, moving few when a core is
+ * added, and wrapping past the last point to the first
+ */
+public class ShardedSolrClientTest {
+	private static final String [] CORES = {
+		"http://localhost:8983/solr/core1",
+		"http://localhost:8983/solr/core2",
+		"http://localhost:8983/solr/core3"
+	};
+	private static final int VIRTUAL_NODES = 128;
+	private static final int LOCATORS = 30000;
+	private boolean isPass = true;
+
+	public ShardedSolrClientTest() {
+		try {
+			runTest();
+		} catch (Exception e) {
+			e.printStackTrace();
+			isPass = false;
+		}
+		System.out.println(isPass ? "PASS" : "FAIL");
+	}
+
+	void runTest() throws Exception {
+		ShardedSolrClient client = newClient(CORES);
+		ShardedSolrClient again = newClient(CORES);
+		String [] more = Arrays.copyOf(CORES, CORES.length+1);
+		more[CORES.length] = "http://localhost:8983/solr/core4";
+		ShardedSolrClient grown = newClient(more);
+		List<String> locators = new ArrayList<String>();
+		Random random = new Random(42);
+		for (int i=0;i<LOCATORS;i++)
+			locators.add(new UUID(random.nextLong(), random.nextLong()).toString());
+		//distribution
+		int [] counts = new int[CORES.length];
+		String lox;
+		for (int i=0;i<LOCATORS;i++)
+			counts[client.getShards().indexOf(client.shardFor(locators.get(i)))]++;
+		for (int i=0;i<counts.length;i++) {
+			double share = (double)counts[i]/LOCATORS;
+			System.out.println("ShardedSolrClientTest core"+(i+1)+" share "+share);
+			check("share core"+(i+1), share > 0.25 && share < 0.42);
+		}
+		//the same locator goes to the same core in every client
+		boolean isStable = true;
+		int moved = 0;
+		boolean isMovedToNew = true;
+		int a, b;
+		for (int i=0;i<LOCATORS;i++) {
+			lox = locators.get(i);
+			a = client.getShards().indexOf(client.shardFor(lox));
+			if (a != again.getShards().indexOf(again.shardFor(lox)))
+				isStable = false;
+			b = grown.getShards().indexOf(grown.shardFor(lox));
+			if (a != b) {
+				moved++;
+				if (b != CORES.length)
+					isMovedToNew = false;
+			}
+		}
+		check("stable", isStable);
+		//about a quarter move to the new core, and only there
+		double movedShare = (double)moved/LOCATORS;
+		System.out.println("ShardedSolrClientTest moved on adding a core "+movedShare);
+		check("moved share", movedShare > 0.15 && movedShare < 0.35);
+		check("moved to the new core only", isMovedToNew);
+		//past the last ring point wraps to the first
+		TreeMap<Integer,Integer> ring = new TreeMap<Integer,Integer>();
+		for (int i=0;i<CORES.length;i++) {
+			for (int j=0;j<VIRTUAL_NODES;j++)
+				ring.put(new Integer(hash(CORES[i]+"#"+j)), new Integer(i));
+		}
+		int first = ring.firstEntry().getValue().intValue();
+		int last = ring.lastKey().intValue();
+		String beyond = null;
+		for (int i=0;beyond == null;i++) {
+			if (hash("wrap"+i) > last)
+				beyond = "wrap"+i;
+		}
+		check("wrap around", client.getShards().indexOf(client.shardFor(beyond)) == first);
+		//one core takes everything
+		ShardedSolrClient single = newClient(new String [] {CORES[0]});
+		Solr3Client only = single.getShards().get(0);
+		check("single core", single.shardFor(beyond) == only && single.shardFor(locators.get(0)) == only);
+		client.shutDown();
+		again.shutDown();
+		grown.shutDown();
+		single.shutDown();
+	}
+
+	ShardedSolrClient newClient(String [] cores) throws Exception {
+		Map<String,Object> props = new HashMap<String,Object>();
+		props.put("ShardVirtualNodes", Integer.toString(VIRTUAL_NODES));
+		StringBuilder url = new StringBuilder();
+		for (int i=0;i<cores.length;i++) {
+			if (i > 0)
+				url.append(",");
+			url.append(cores[i]);
+		}
+		ShardedSolrClient result = new ShardedSolrClient();
+		result.setConfiguration(props);
+		//no request is sent until the client is used
+		result.init(url.toString());
+		return result;
+	}
+
+	/**
+	 * The ring's hash: the first four bytes of the MD5 digest
+	 */
+	int hash(String s) throws Exception {
+		byte [] d = MessageDigest.getInstance("MD5").digest(s.getBytes("UTF-8"));
+		return ((d[0] & 0xff) << 24) | ((d[1] & 0xff) << 16) | ((d[2] & 0xff) << 8) | (d[3] & 0xff);
+	}
+
+	void check(String name, boolean ok) {
+		if (!ok) {
+			isPass = false;
+			System.out.println("ShardedSolrClientTest FAILED "+name);
+		}
+	}
+
+	public static void main(String[] args) {
+		new ShardedSolrClientTest();
+	}
+}
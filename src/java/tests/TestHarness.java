@@ -30,6 +30,9 @@ public class TestHarness {
 		System.out.println("Starting");
 		//new SolrQueryIteratorTest();
 		//new SolrModelTest();
+		//new UpdateCoalescerTest();
+		//new WeightedPrefixTrieTest();
+		//new ShardedSolrClientTest();
 		new WiringTest_4();
 	}
 
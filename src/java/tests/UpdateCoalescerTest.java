@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package tests;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import org.topicquests.common.ResultPojo;
+import org.topicquests.common.api.IResult;
+import org.topicquests.solr.UpdateCoalescer;
+import org.topicquests.solr.api.ISolrClient;
+
+/**
+ * @author park
+ * Checks, without Solr, that coalesced partial updates to one locator
+ * reach the client one at a time and in the order they were submitted
+ */
+public class UpdateCoalescerTest {
+	/** documents as sent, guarded by itself */
+	private List<Map<String,Object>> sent = new ArrayList<Map<String,Object>>();
+	private int inFlight = 0, maxInFlight = 0;
+
+	public UpdateCoalescerTest() {
+		try {
+			runTest(0);
+			runTest(5);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	void runTest(long window) throws Exception {
+		sent.clear();
+		maxInFlight = 0;
+		final UpdateCoalescer coalescer = new UpdateCoalescer(slowClient(), window);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i=0;i<20;i++) {
+			final Map<String,Object> fields = new HashMap<String,Object>();
+			fields.put("locator", "L");
+			Map<String,Object> op = new HashMap<String,Object>();
+			//every fifth update cannot be folded, and must not be reordered either
+			op.put((i % 5 == 4) ? "inc" : "set", new Integer(i));
+			fields.put("v", op);
+			Thread t = new Thread() {
+				public void run() {
+					coalescer.submit(fields);
+				}
+			};
+			threads.add(t);
+			t.start();
+			Thread.sleep(3);
+		}
+		for (int i=0;i<threads.size();i++)
+			threads.get(i).join();
+		int last = -1;
+		boolean isOrdered = true;
+		for (int i=0;i<sent.size();i++) {
+			Map<String,Object> op = (Map<String,Object>)sent.get(i).get("v");
+			Object v = op.values().iterator().next();
+			int x = (v instanceof List) ? max((List<Integer>)v) : ((Integer)v).intValue();
+			if (x <= last)
+				isOrdered = false;
+			last = x;
+		}
+		System.out.println("UpdateCoalescerTest window="+window+" sends="+sent.size()+
+				" ordered="+isOrdered+" last="+last+" maxInFlight="+maxInFlight);
+		System.out.println((isOrdered && last == 19 && maxInFlight == 1) ? "PASS" : "FAIL");
+	}
+
+	int max(List<Integer> l) {
+		int result = -1;
+		for (int i=0;i<l.size();i++)
+			result = Math.max(result, l.get(i).intValue());
+		return result;
+	}
+
+	/**
+	 * A client which takes 15 milliseconds per partial update
+	 * @return
+	 */
+	ISolrClient slowClient() {
+		return (ISolrClient)Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] {ISolrClient.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+				synchronized(sent) {
+					inFlight++;
+					maxInFlight = Math.max(maxInFlight, inFlight);
+					sent.add(new HashMap<String,Object>((Map<String,Object>)args[0]));
+				}
+				Thread.sleep(15);
+				synchronized(sent) {
+					inFlight--;
+				}
+				return new ResultPojo();
+			}
+		});
+	}
+
+	public static void main(String[] args) {
+		new UpdateCoalescerTest();
+	}
+}
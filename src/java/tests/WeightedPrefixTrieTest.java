@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013, TopicQuests
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package tests;
+
+import java.util.*;
+
+import org.topicquests.common.api.ITopicQuestsOntology;
+import org.topicquests.solr.suggest.LabelSuggester;
+import org.topicquests.solr.suggest.LabelSuggestion;
+
+/**
+ * @author park
+ * Checks, without Solr, that label completions come heaviest first,
+ * also after a node's weight changes or a label is removed
+ */
+public class WeightedPrefixTrieTest {
+	private LabelSuggester suggester = new LabelSuggester();
+	private boolean isPass = true;
+
+	public WeightedPrefixTrieTest() {
+		//weight is the number of tuples
+		index("A", "apple", 1, false);
+		index("B", "Apricot", 3, false);
+		index("C", "april", 2, false);
+		index("D", "banana", 5, false);
+		index("E", "apex", 9, true);
+		check("initial", "ap", 3, null, "B C A");
+		check("count", "", 2, null, "D B");
+		check("private", "ap", 2, creds("friends"), "E B");
+		//A gains 5 tuples
+		Map<String,Object> update = new HashMap<String,Object>();
+		update.put(ITopicQuestsOntology.LOCATOR_PROPERTY, "A");
+		Map<String,Object> op = new HashMap<String,Object>();
+		op.put("add", tuples(5));
+		update.put(ITopicQuestsOntology.TUPLE_LIST_PROPERTY, op);
+		suggester.applyUpdate(update);
+		check("reweigh", "ap", 3, null, "A B C");
+		check("reweigh all", "", 2, null, "A D");
+		//B is relabeled, which removes apricot
+		index("B", "berry", 3, false);
+		check("remove", "ap", 3, null, "A C");
+		check("removed prefix", "apri", 3, null, "C");
+		check("new label", "b", 3, null, "D B");
+		System.out.println(isPass ? "PASS" : "FAIL");
+	}
+
+	void index(String locator, String label, int weight, boolean isPrivate) {
+		Map<String,Object> props = new HashMap<String,Object>();
+		props.put(ITopicQuestsOntology.LOCATOR_PROPERTY, locator);
+		props.put(ITopicQuestsOntology.LABEL_PROPERTY, label);
+		props.put(ITopicQuestsOntology.TUPLE_LIST_PROPERTY, tuples(weight));
+		props.put(ITopicQuestsOntology.IS_PRIVATE_PROPERTY, new Boolean(isPrivate));
+		if (isPrivate)
+			props.put(ITopicQuestsOntology.RESTRICTION_PROPERTY_TYPE, "friends");
+		suggester.index(props, false);
+	}
+
+	List<String> tuples(int count) {
+		List<String> result = new ArrayList<String>();
+		for (int i=0;i<count;i++)
+			result.add(UUID.randomUUID().toString());
+		return result;
+	}
+
+	Set<String> creds(String c) {
+		Set<String> result = new HashSet<String>();
+		result.add(c);
+		return result;
+	}
+
+	void check(String name, String prefix, int count, Set<String> credentials, String expected) {
+		List<LabelSuggestion> l = suggester.suggest(prefix, "en", count, credentials);
+		StringBuilder buf = new StringBuilder();
+		for (int i=0;i<l.size();i++) {
+			if (i > 0)
+				buf.append(" ");
+			buf.append(l.get(i).getLocator());
+		}
+		boolean ok = buf.toString().equals(expected);
+		if (!ok)
+			isPass = false;
+		System.out.println("WeightedPrefixTrieTest "+name+" "+prefix+" -> "+buf+(ok ? "" : " expected "+expected));
+	}
+
+	public static void main(String[] args) {
+		new WeightedPrefixTrieTest();
+	}
+}